@@ -0,0 +1,45 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.controller;
+
+import io.swagger.oas.inflector.models.RequestContext;
+import io.swagger.oas.inflector.models.ResponseContext;
+import io.swagger.petstore.data.OrderRepository;
+import io.swagger.petstore.data.PetRepository;
+import io.swagger.petstore.data.Repositories;
+import io.swagger.petstore.data.UserRepository;
+import io.swagger.petstore.utils.StoreExport;
+
+import javax.ws.rs.core.HttpHeaders;
+
+public class ExportController {
+
+    private static PetRepository petData = Repositories.pets();
+    private static OrderRepository orderData = Repositories.orders();
+    private static UserRepository userData = Repositories.users();
+
+    public ResponseContext exportStore(final RequestContext request) {
+        // the views are taken together, before anything is written. The body has no length so it goes out chunked
+        final StoreExport export = Repositories.atOnePointInTime(() -> new StoreExport(petData.iteratePets(),
+                orderData.iterateOrders(), userData.iterateUsers()));
+        return new ResponseContext()
+                .contentType(StoreExport.APPLICATION_GZIP_TYPE)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + StoreExport.FILE_NAME + "\"")
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .entity(export);
+    }
+}
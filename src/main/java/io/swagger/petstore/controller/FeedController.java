@@ -0,0 +1,69 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.controller;
+
+import io.swagger.oas.inflector.models.RequestContext;
+import io.swagger.oas.inflector.models.ResponseContext;
+import io.swagger.petstore.data.ChangeFeed;
+import io.swagger.petstore.utils.EventStream;
+import io.swagger.petstore.utils.RequestCompletion;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.Semaphore;
+
+public class FeedController {
+
+    static final String SUBSCRIBERS_PROPERTY = "petstore.feed.subscribers";
+
+    // every subscriber holds a request thread for as long as it stays connected
+    private static final Semaphore subscribers = new Semaphore(Integer.getInteger(SUBSCRIBERS_PROPERTY, 64));
+
+    public ResponseContext streamChanges(final RequestContext request, final Long after, final String lastEventId) {
+        Long resumeAfter = after;
+        if (resumeAfter == null && lastEventId != null) {
+            try {
+                resumeAfter = Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException e) {
+                return new ResponseContext()
+                        .status(Response.Status.BAD_REQUEST)
+                        .entity("Invalid Last-Event-ID. Try again?");
+            }
+        }
+
+        if (request.getRequest() != null && HttpMethod.HEAD.equals(request.getRequest().getMethod())) {
+            // the body of a HEAD response is dropped, so a stream would never notice the client leave; Jersey
+            // runs HEAD as GET, so only the servlet request tells them apart
+            return new ResponseContext()
+                    .contentType(EventStream.TEXT_EVENT_STREAM_TYPE)
+                    .header(HttpHeaders.CACHE_CONTROL, "no-cache");
+        }
+        if (!subscribers.tryAcquire()) {
+            return new ResponseContext()
+                    .status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .entity("Too many change feed subscribers. Try again later.");
+        }
+        // given back when the request is done, also when the stream is never written
+        RequestCompletion.onFinish(request.getContext(), subscribers::release);
+        return new ResponseContext()
+                .contentType(EventStream.TEXT_EVENT_STREAM_TYPE)
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .entity(new EventStream(ChangeFeed.get().subscribe(resumeAfter)));
+    }
+}
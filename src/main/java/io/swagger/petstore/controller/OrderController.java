@@ -18,23 +18,78 @@ package io.swagger.petstore.controller;
 
 import io.swagger.oas.inflector.models.RequestContext;
 import io.swagger.oas.inflector.models.ResponseContext;
+import io.swagger.petstore.data.ChangeFeed;
 import io.swagger.petstore.data.OrderData;
+import io.swagger.petstore.data.OrderRepository;
+import io.swagger.petstore.data.Repositories;
+import io.swagger.petstore.data.Versioned;
 import io.swagger.petstore.model.Order;
+import io.swagger.petstore.utils.ContentNegotiation;
+import io.swagger.petstore.utils.IdempotencyCache;
+import io.swagger.petstore.utils.ResponseCache;
+import io.swagger.petstore.utils.StreamingList;
 import io.swagger.petstore.utils.Util;
 import org.joda.time.DateTime;
 
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.util.Date;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @javax.annotation.Generated(value = "class io.swagger.codegen.languages.JavaInflectorServerCodegen", date = "2017-04-08T15:48:56.501Z")
 public class OrderController {
 
-    private static OrderData orderData = new OrderData();
+    static final String IDEMPOTENCY_CAPACITY_PROPERTY = "petstore.idempotency.capacity";
+    static final String IDEMPOTENCY_TTL_PROPERTY = "petstore.idempotency.ttl";
+    static final String IDEMPOTENCY_WAIT_PROPERTY = "petstore.idempotency.wait";
+
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
+    private static OrderRepository orderData = Repositories.orders();
+    private static ResponseCache responses = ResponseCache.get();
+    private static ChangeFeed feed = ChangeFeed.get();
+
+    // placed orders by Idempotency-Key, so a retried placeOrder gets the first response instead of a second order
+    private static final IdempotencyCache<Versioned<Order>> placedOrders = new IdempotencyCache<>(
+            Integer.getInteger(IDEMPOTENCY_CAPACITY_PROPERTY, 100000),
+            Long.getLong(IDEMPOTENCY_TTL_PROPERTY, TimeUnit.DAYS.toSeconds(1)),
+            Long.getLong(IDEMPOTENCY_WAIT_PROPERTY, 30), TimeUnit.SECONDS);
 
     public ResponseContext getInventory(final RequestContext request) {
+        // the counts change only with orders, and every order write moves the feed past this stamp
+        final long lastModified = feed.lastModified(ChangeFeed.ORDER);
+        final String etag = Util.getETag(request, feed.latest(ChangeFeed.ORDER));
+        if (Util.isNotModified(request, etag, lastModified)) {
+            return Util.notModified(request, etag, lastModified);
+        }
+        return Util.withValidators(new ResponseContext()
+                .contentType(ContentNegotiation.getMediaType(request))
+                .entity(orderData.getCountByStatus()), etag, lastModified);
+    }
+
+    public ResponseContext findOrdersByShipDate(final RequestContext request, final DateTime from,
+                                                final DateTime to) {
+        if (from == null) {
+            return new ResponseContext()
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity("No from date provided. Try again?");
+        }
+        if (to != null && to.isBefore(from)) {
+            return new ResponseContext()
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity("The to date is before the from date. Try again?");
+        }
+
+        // a range can cover any number of orders, so it is streamed rather than built as a list
+        final MediaType outputType = ContentNegotiation.getMediaType(request);
+        final Date end = to == null ? new Date(Long.MAX_VALUE) : to.toDate();
         return new ResponseContext()
-                .contentType(Util.getMediaType(request))
-                .entity(orderData.getCountByStatus());
+                .contentType(outputType)
+                .entity(new StreamingList(orderData.iterateOrdersByShipDate(from.toDate(), end), outputType));
     }
 
     public ResponseContext getOrderById(final RequestContext request, final Long orderId) {
@@ -44,12 +99,10 @@ public class OrderController {
                     .entity("No orderId provided. Try again?");
         }
 
-        final Order order = orderData.getOrderById(orderId);
+        final Versioned<Order> order = orderData.getVersionedOrderById(orderId);
 
         if (order != null) {
-            return new ResponseContext()
-                    .contentType(Util.getMediaType(request))
-                    .entity(order);
+            return responses.respond(request, orderId, order);
         }
 
         return new ResponseContext().status(Response.Status.NOT_FOUND).entity("Order not found");
@@ -62,10 +115,31 @@ public class OrderController {
                     .entity("No Order provided. Try again?");
         }
 
-        orderData.addOrder(order);
-        return new ResponseContext()
-                .contentType(Util.getMediaType(request))
-                .entity(order);
+        final String idempotencyKey = request.getHeaders().getFirst(IDEMPOTENCY_KEY);
+        if (idempotencyKey == null) {
+            return placed(request, orderData.addOrder(order));
+        }
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            return new ResponseContext()
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity("Idempotency-Key must be 1 to " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters. Try again?");
+        }
+
+        final IdempotencyCache.Outcome<Versioned<Order>> outcome;
+        try {
+            outcome = placedOrders.execute(idempotencyKey, fingerprint(order), () -> orderData.addOrder(order));
+        } catch (IllegalStateException e) {
+            return new ResponseContext()
+                    .status(Response.Status.CONFLICT)
+                    .entity("Idempotency-Key was already used for a different order.");
+        } catch (RejectedExecutionException e) {
+            return new ResponseContext()
+                    .status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .entity(e.getMessage() + ". Try again later.");
+        }
+        final ResponseContext response = placed(request, outcome.getValue());
+        return outcome.isReplayed() ? response.header(IDEMPOTENT_REPLAYED, "true") : response;
     }
 
     public ResponseContext placeOrder(final RequestContext request, final Long id, final Long petId, final Integer quantity, final DateTime shipDate,
@@ -81,16 +155,42 @@ public class OrderController {
                     .entity("No orderId provided. Try again?");
         }
 
-        orderData.deleteOrderById(orderId);
+        if (Util.hasIfMatch(request)) {
+            final Versioned<Order> existing = orderData.getVersionedOrderById(orderId);
+            if (existing == null || !Util.matchesIfMatch(request, existing.getVersion())
+                    || !orderData.deleteOrderById(orderId, existing.getVersion())) {
+                return new ResponseContext()
+                        .status(Response.Status.PRECONDITION_FAILED)
+                        .entity("Order was modified. Fetch it again and retry.");
+            }
+        } else {
+            orderData.deleteOrderById(orderId);
+        }
 
         final Order order = orderData.getOrderById(orderId);
 
         if (null == order) {
             return new ResponseContext()
-                    .contentType(Util.getMediaType(request))
+                    .contentType(ContentNegotiation.getMediaType(request))
                     .entity(order);
         } else {
             return new ResponseContext().status(Response.Status.NOT_MODIFIED).entity("Order couldn't be deleted.");
         }
     }
-}
\ No newline at end of file
+
+    private static ResponseContext placed(final RequestContext request, final Versioned<Order> stored) {
+        return new ResponseContext()
+                .contentType(ContentNegotiation.getMediaType(request))
+                .header(Util.ETAG, Util.getETag(request, stored.getVersion()))
+                .entity(stored.getValue());
+    }
+
+    /**
+     * What a retry must repeat to reuse a key. The ship date is left out, as the form variant stamps it with the
+     * time of each request.
+     */
+    private static String fingerprint(final Order order) {
+        return order.getId() + "/" + order.getPetId() + "/" + order.getQuantity() + "/" + order.getStatus() + "/"
+                + order.isComplete();
+    }
+}
@@ -18,38 +18,87 @@ package io.swagger.petstore.controller;
 
 import io.swagger.oas.inflector.models.RequestContext;
 import io.swagger.oas.inflector.models.ResponseContext;
+import io.swagger.petstore.data.ChangeFeed;
 import io.swagger.petstore.data.PetData;
+import io.swagger.petstore.data.PetRepository;
+import io.swagger.petstore.data.Repositories;
+import io.swagger.petstore.data.Versioned;
+import io.swagger.petstore.model.BatchItemResult;
+import io.swagger.petstore.model.BatchResult;
 import io.swagger.petstore.model.Category;
+import io.swagger.petstore.model.ImportReport;
 import io.swagger.petstore.model.Pet;
 import io.swagger.petstore.model.Tag;
+import io.swagger.petstore.utils.ContentNegotiation;
+import io.swagger.petstore.utils.PetImporter;
+import io.swagger.petstore.utils.ResponseCache;
+import io.swagger.petstore.utils.StreamingList;
 import io.swagger.petstore.utils.Util;
 
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
 
 @javax.annotation.Generated(value = "class io.swagger.codegen.languages.JavaInflectorServerCodegen", date = "2017-04-08T15:48:56.501Z")
 public class PetController {
 
-    private static PetData petData = new PetData();
+    private static PetRepository petData = Repositories.pets();
+    private static ResponseCache responses = ResponseCache.get();
+    private static ChangeFeed feed = ChangeFeed.get();
 
-    public ResponseContext findPetsByStatus(final RequestContext request, final String status) {
+    public ResponseContext findPetsByStatus(final RequestContext request, final String status, final Integer limit,
+                                            final String cursor) {
         if (status == null) {
             return new ResponseContext()
                     .status(Response.Status.BAD_REQUEST)
                     .entity("No status provided. Try again?");
         }
 
-        final List<Pet> petByStatus = petData.findPetByStatus(status);
+        if (limit != null && limit < 1) {
+            return new ResponseContext()
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity("Invalid limit value. Try again?");
+        }
+
+        final Long afterId;
+        try {
+            afterId = cursor == null ? null : Util.decodeCursor(cursor);
+        } catch (IllegalArgumentException e) {
+            return new ResponseContext()
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity("Invalid cursor. Try again?");
+        }
+
+        // every pet write moves the feed past this stamp, so it validates the result without computing it
+        final long lastModified = feed.lastModified(ChangeFeed.PET);
+        final String etag = Util.getETag(request, feed.latest(ChangeFeed.PET));
+        if (Util.isNotModified(request, etag, lastModified)) {
+            return Util.notModified(request, etag, lastModified);
+        }
+
+        if (limit == null) {
+            // an unpaged result can be arbitrarily large, so it is streamed rather than built as a list
+            final MediaType outputType = ContentNegotiation.getMediaType(request);
+            return Util.withValidators(new ResponseContext()
+                    .contentType(outputType)
+                    .entity(new StreamingList(petData.iteratePetsByStatus(status, afterId), outputType)),
+                    etag, lastModified);
+        }
+
+        final List<Pet> petByStatus = petData.findPetByStatus(status, afterId, pageFetchSize(limit));
 
         if (petByStatus == null) {
             return new ResponseContext().status(Response.Status.NOT_FOUND).entity("Pets not found");
         }
 
-        return new ResponseContext()
-                .contentType(Util.getMediaType(request))
-                .entity(petByStatus);
+        return Util.withValidators(page(request, petByStatus, limit), etag, lastModified);
     }
 
     public ResponseContext getPetById(final RequestContext request, final Long petId) {
@@ -59,12 +108,16 @@ public class PetController {
                     .entity("No petId provided. Try again?");
         }
 
-        final Pet pet = petData.getPetById(petId);
+        final long lastModified = feed.lastModified(ChangeFeed.PET);
+        final Versioned<Pet> pet = petData.getVersionedPetById(petId);
 
         if (pet != null) {
-            return new ResponseContext()
-                    .contentType(Util.getMediaType(request))
-                    .entity(pet);
+            final String etag = Util.getETag(request, pet.getVersion());
+            if (Util.isNotModified(request, etag, lastModified)) {
+                return Util.notModified(request, etag, lastModified);
+            }
+            // the cached body comes with its tag, which names its content coding
+            return Util.withLastModified(responses.respond(request, petId, pet), lastModified);
         }
 
         return new ResponseContext().status(Response.Status.NOT_FOUND).entity("Pet not found");
@@ -83,21 +136,9 @@ public class PetController {
                     .entity("No Name provided. Try again?");
         }
 
-        final MediaType outputType = Util.getMediaType(request);
-        final Pet existingPet = petData.getPetById(petId);
-
-        if (existingPet == null) {
-            return new ResponseContext().status(Response.Status.NOT_FOUND).entity("Pet not found");
-        }
-
-        petData.deletePetById(existingPet.getId());
-        existingPet.setName(name);
-        existingPet.setStatus(status);
-        petData.addPet(existingPet);
-
-        return new ResponseContext()
-                .contentType(outputType)
-                .entity(existingPet);
+        // replace rather than mutate the stored pet; readers may still hold it through an older catalog
+        return updateExistingPet(request, petId, existingPet -> PetData.createPet(existingPet.getId(),
+                existingPet.getCategory(), name, existingPet.getPhotoUrls(), existingPet.getTags(), status));
     }
 
     public ResponseContext deletePet(final RequestContext request, final String apiKey, final Long petId) {
@@ -107,9 +148,18 @@ public class PetController {
                     .entity("No petId provided. Try again?");
         }
 
-        petData.deletePetById(petId);
+        if (Util.hasIfMatch(request)) {
+            final Versioned<Pet> existing = petData.getVersionedPetById(petId);
+            // If-Match cannot match an entity that does not exist
+            if (existing == null || !Util.matchesIfMatch(request, existing.getVersion())
+                    || !petData.deletePetById(petId, existing.getVersion())) {
+                return preconditionFailed();
+            }
+        } else {
+            petData.deletePetById(petId);
+        }
 
-        final MediaType outputType = Util.getMediaType(request);
+        final MediaType outputType = ContentNegotiation.getMediaType(request);
 
         final Pet pet = petData.getPetById(petId);
 
@@ -134,24 +184,40 @@ public class PetController {
             return new ResponseContext().status(Response.Status.BAD_REQUEST).entity("No file uploaded");
         }
 
-        final Pet existingPet = petData.getPetById(petId);
-        if (existingPet == null) {
-            return new ResponseContext().status(Response.Status.NOT_FOUND).entity("Pet not found");
-        }
-
-        existingPet.getPhotoUrls().add(file.getAbsolutePath());
-        petData.deletePetById(existingPet.getId());
-        petData.addPet(existingPet);
+        return updateExistingPet(request, petId, existingPet -> {
+            // copy the photo list; the stored pet may still be read through an older catalog version
+            final List<String> photoUrls = existingPet.getPhotoUrls() == null
+                    ? new ArrayList<>() : new ArrayList<>(existingPet.getPhotoUrls());
+            photoUrls.add(file.getAbsolutePath());
+            return PetData.createPet(existingPet.getId(), existingPet.getCategory(), existingPet.getName(),
+                    photoUrls, existingPet.getTags(), existingPet.getStatus());
+        });
+    }
 
-        final Pet pet = petData.getPetById(petId);
+    public ResponseContext importPets(final RequestContext request, final Integer batchSize, final InputStream body) {
+        if (body == null) {
+            return new ResponseContext()
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity("No pets provided. Try again?");
+        }
+        if (batchSize != null && (batchSize < 1 || batchSize > PetImporter.MAX_BATCH_SIZE)) {
+            return new ResponseContext()
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity("batchSize must be between 1 and " + PetImporter.MAX_BATCH_SIZE);
+        }
 
-        if (null != pet) {
+        final ImportReport report;
+        try {
+            report = new PetImporter(petData, batchSize == null ? PetImporter.DEFAULT_BATCH_SIZE : batchSize)
+                    .importFrom(body);
+        } catch (IOException e) {
             return new ResponseContext()
-                    .contentType(Util.getMediaType(request))
-                    .entity(pet);
-        } else {
-            return new ResponseContext().status(Response.Status.NOT_MODIFIED).entity("Pet couldn't be updated.");
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity("Could not read the pets: " + e.getMessage());
         }
+        return new ResponseContext()
+                .contentType(ContentNegotiation.getMediaType(request))
+                .entity(report);
     }
 
     public ResponseContext addPet(final RequestContext request, final Pet pet) {
@@ -161,10 +227,11 @@ public class PetController {
                     .entity("No Pet provided. Try again?");
         }
 
-        petData.addPet(pet);
+        final Versioned<Pet> stored = petData.addPet(pet);
 
         return new ResponseContext()
-                .contentType(Util.getMediaType(request))
+                .contentType(ContentNegotiation.getMediaType(request))
+                .header(Util.ETAG, Util.getETag(request, stored.getVersion()))
                 .entity(pet);
     }
 
@@ -181,17 +248,7 @@ public class PetController {
                     .entity("No Pet provided. Try again?");
         }
 
-        final Pet existingPet = petData.getPetById(pet.getId());
-        if (existingPet == null) {
-            return new ResponseContext().status(Response.Status.NOT_FOUND).entity("Pet not found");
-        }
-
-        petData.deletePetById(existingPet.getId());
-        petData.addPet(pet);
-
-        return new ResponseContext()
-                .contentType(Util.getMediaType(request))
-                .entity(pet);
+        return updateExistingPet(request, pet.getId(), existingPet -> pet);
     }
 
     public ResponseContext updatePet(final RequestContext request, final Long id, final String name, final Category category,
@@ -200,19 +257,190 @@ public class PetController {
         return updatePet(request, pet);
     }
 
-    public ResponseContext findPetsByTags(final RequestContext request, final List<String> tags) {
+    public ResponseContext addPets(final RequestContext request, final Pet[] pets) {
+        return storePets(request, pets, false);
+    }
+
+    public ResponseContext updatePets(final RequestContext request, final Pet[] pets) {
+        return storePets(request, pets, true);
+    }
+
+    public ResponseContext findPetsByTags(final RequestContext request, final List<String> tags, final String match,
+                                          final Integer limit, final String cursor) {
         if (tags == null || tags.size() == 0) {
             return new ResponseContext()
                     .status(Response.Status.BAD_REQUEST)
                     .entity("No tags provided. Try again?");
         }
 
-        final List<Pet> petByTags = petData.findPetByTags(tags);
+        if (match != null && !"any".equals(match) && !"all".equals(match)) {
+            return new ResponseContext()
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity("Invalid match value. Use any or all.");
+        }
+
+        if (limit != null && limit < 1) {
+            return new ResponseContext()
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity("Invalid limit value. Try again?");
+        }
+
+        final Long afterId;
+        try {
+            afterId = cursor == null ? null : Util.decodeCursor(cursor);
+        } catch (IllegalArgumentException e) {
+            return new ResponseContext()
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity("Invalid cursor. Try again?");
+        }
+
+        if (limit == null) {
+            final MediaType outputType = ContentNegotiation.getMediaType(request);
+            return new ResponseContext()
+                    .contentType(outputType)
+                    .entity(new StreamingList(petData.iteratePetsByTags(tags, "all".equals(match), afterId),
+                            outputType));
+        }
+
+        final List<Pet> petByTags = petData.findPetByTags(tags, "all".equals(match), afterId, pageFetchSize(limit));
+
+        return page(request, petByTags, limit);
+    }
+
+    /**
+     * One pet more than the page size is fetched to learn whether a next page exists.
+     */
+    private static int pageFetchSize(final int limit) {
+        return (int) Math.min(Integer.MAX_VALUE, limit + 1L);
+    }
+
+    private ResponseContext page(final RequestContext request, final List<Pet> pets, final int limit) {
+        final ResponseContext response = new ResponseContext().contentType(ContentNegotiation.getMediaType(request));
+        if (pets.size() > limit) {
+            pets.remove(pets.size() - 1);
+            response.header(Util.NEXT_CURSOR, Util.encodeCursor(pets.get(pets.size() - 1).getId()));
+        }
+        return response.entity(pets);
+    }
+
+    /**
+     * Stores the valid pets of a batch as one store update, so they share one version and one index update,
+     * and reports every item. An id listed more than once is stored as its last occurrence; the earlier ones
+     * are reported as conflicts. With replace, pets whose ids are not stored are reported as not found.
+     */
+    private ResponseContext storePets(final RequestContext request, final Pet[] pets, final boolean replace) {
+        if (pets == null || pets.length == 0) {
+            return new ResponseContext()
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity("No pets provided. Try again?");
+        }
+        if (pets.length > PetImporter.MAX_BATCH_SIZE) {
+            return new ResponseContext()
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity("At most " + PetImporter.MAX_BATCH_SIZE + " pets per batch");
+        }
+
+        final BatchResult result = new BatchResult();
+        final Map<Long, Integer> lastIndex = new HashMap<>();
+        for (int i = 0; i < pets.length; i++) {
+            final Pet pet = pets[i];
+            final BatchItemResult item = new BatchItemResult(i, pet != null && pet.hasId() ? pet.getId() : null);
+            result.getItems().add(item);
+            if (pet == null) {
+                fail(item, Response.Status.BAD_REQUEST, "No pet provided");
+            } else if (!pet.hasId()) {
+                fail(item, Response.Status.BAD_REQUEST, "Pet has no id");
+            } else if (pet.getName() == null) {
+                fail(item, Response.Status.BAD_REQUEST, "Pet has no name");
+            } else {
+                lastIndex.put(pet.getId(), i);
+            }
+        }
+
+        final List<Pet> batch = new ArrayList<>(lastIndex.size());
+        final List<BatchItemResult> batchItems = new ArrayList<>(lastIndex.size());
+        for (final BatchItemResult item : result.getItems()) {
+            if (item.getMessage() != null) {
+                continue;
+            }
+            final int last = lastIndex.get(item.getId());
+            if (last != item.getIndex()) {
+                fail(item, Response.Status.CONFLICT, "Pet is listed again at index " + last);
+            } else {
+                batch.add(pets[item.getIndex()]);
+                batchItems.add(item);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            if (replace) {
+                final List<Versioned<Pet>> stored = petData.replacePets(batch);
+                for (int i = 0; i < stored.size(); i++) {
+                    if (stored.get(i) == null) {
+                        fail(batchItems.get(i), Response.Status.NOT_FOUND, "Pet not found");
+                    } else {
+                        succeed(batchItems.get(i), stored.get(i).getVersion());
+                    }
+                }
+            } else {
+                final long version = petData.addPets(batch);
+                for (final BatchItemResult item : batchItems) {
+                    succeed(item, version);
+                }
+            }
+        }
+
+        for (final BatchItemResult item : result.getItems()) {
+            if (item.getCode() == Response.Status.OK.getStatusCode()) {
+                result.setStored(result.getStored() + 1);
+            } else {
+                result.setFailed(result.getFailed() + 1);
+            }
+        }
+        return new ResponseContext()
+                .contentType(ContentNegotiation.getMediaType(request))
+                .entity(result);
+    }
+
+    private static void succeed(final BatchItemResult item, final long version) {
+        item.setCode(Response.Status.OK.getStatusCode());
+        item.setVersion(version);
+    }
+
+    private static void fail(final BatchItemResult item, final Response.Status status, final String message) {
+        item.setCode(status.getStatusCode());
+        item.setMessage(message);
+    }
+
+    /**
+     * Read-modify-write of a stored pet with compare-and-set on its version. A lost race is retried
+     * against the fresh version, which then fails the If-Match check if the client asked for a specific one.
+     */
+    private ResponseContext updateExistingPet(final RequestContext request, final long petId,
+                                              final UnaryOperator<Pet> update) {
+        while (true) {
+            final Versioned<Pet> existing = petData.getVersionedPetById(petId);
+            if (existing == null) {
+                return new ResponseContext().status(Response.Status.NOT_FOUND).entity("Pet not found");
+            }
+            if (!Util.matchesIfMatch(request, existing.getVersion())) {
+                return preconditionFailed();
+            }
+
+            final Versioned<Pet> updated = petData.replacePet(update.apply(existing.getValue()), existing.getVersion());
+            if (updated != null) {
+                return new ResponseContext()
+                        .contentType(ContentNegotiation.getMediaType(request))
+                        .header(Util.ETAG, Util.getETag(request, updated.getVersion()))
+                        .entity(updated.getValue());
+            }
+        }
+    }
 
+    private ResponseContext preconditionFailed() {
         return new ResponseContext()
-                .contentType(Util.getMediaType(request))
-                .entity(petByTags);
+                .status(Response.Status.PRECONDITION_FAILED)
+                .entity("Pet was modified. Fetch it again and retry.");
     }
-    
 }
 
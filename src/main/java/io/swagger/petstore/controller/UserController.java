@@ -18,18 +18,25 @@ package io.swagger.petstore.controller;
 
 import io.swagger.oas.inflector.models.RequestContext;
 import io.swagger.oas.inflector.models.ResponseContext;
+import io.swagger.petstore.data.Repositories;
 import io.swagger.petstore.data.UserData;
+import io.swagger.petstore.data.UserRepository;
+import io.swagger.petstore.data.Versioned;
 import io.swagger.petstore.model.User;
+import io.swagger.petstore.utils.ContentNegotiation;
+import io.swagger.petstore.utils.ResponseCache;
 import io.swagger.petstore.utils.Util;
 import org.apache.commons.lang.math.RandomUtils;
 
 import javax.ws.rs.core.Response;
+import java.util.Arrays;
 import java.util.Date;
 
 @javax.annotation.Generated(value = "class io.swagger.codegen.languages.JavaInflectorServerCodegen", date = "2017-04-08T15:48:56.501Z")
 public class UserController {
 
-    private static UserData userData = new UserData();
+    private static UserRepository userData = Repositories.users();
+    private static ResponseCache responses = ResponseCache.get();
 
     public ResponseContext createUser(final RequestContext request, final User user) {
         if (user == null) {
@@ -38,9 +45,16 @@ public class UserController {
                     .entity("No User provided. Try again?");
         }
 
-        userData.addUser(user);
+        if (user.getUsername() == null) {
+            return new ResponseContext()
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity("No username provided. Try again?");
+        }
+
+        final Versioned<User> stored = userData.addUser(user);
         return new ResponseContext()
-                .contentType(Util.getMediaType(request))
+                .contentType(ContentNegotiation.getMediaType(request))
+                .header(Util.ETAG, Util.getETag(request, stored.getVersion()))
                 .entity(user);
     }
 
@@ -58,52 +72,26 @@ public class UserController {
                     .entity("No username provided. Try again?");
         }
 
-        final User user = userData.findUserByName(username);
+        final Versioned<User> user = userData.findVersionedUserByName(username);
         if (user == null) {
             return new ResponseContext().status(Response.Status.NOT_FOUND).entity("User not found");
         }
 
-        return new ResponseContext()
-                .contentType(Util.getMediaType(request))
-                .entity(user);
+        return responses.respond(request, username, user);
     }
 
     public ResponseContext createUsersWithArrayInput(final RequestContext request, final User[] users) {
-        if (users == null || users.length == 0) {
-            return new ResponseContext()
-                    .status(Response.Status.BAD_REQUEST)
-                    .entity("No User provided. Try again?");
-        }
-
-        for (final User user : users) {
-            userData.addUser(user);
-        }
-
-        return new ResponseContext()
-                .contentType(Util.getMediaType(request))
-                .entity(users);
+        return addUsers(request, users);
     }
 
     public ResponseContext createUsersWithListInput(final RequestContext request, final User[] users) {
-        if (users == null || users.length == 0) {
-            return new ResponseContext()
-                    .status(Response.Status.BAD_REQUEST)
-                    .entity("No User provided. Try again?");
-        }
-
-        for (final User user : users) {
-            userData.addUser(user);
-        }
-
-        return new ResponseContext()
-                .contentType(Util.getMediaType(request))
-                .entity(users);
+        return addUsers(request, users);
     }
 
     public ResponseContext loginUser(final RequestContext request, final String username, final String password) {
         Date date = new Date(System.currentTimeMillis() + 3600000);
         return new ResponseContext()
-                .contentType(Util.getMediaType(request))
+                .contentType(ContentNegotiation.getMediaType(request))
                 .header("X-Rate-Limit", String.valueOf(5000))
                 .header("X-Expires-After", date.toString())
                 .entity("Logged in user session: " + RandomUtils.nextLong());
@@ -111,7 +99,7 @@ public class UserController {
 
     public ResponseContext logoutUser(final RequestContext request) {
         return new ResponseContext()
-                .contentType(Util.getMediaType(request))
+                .contentType(ContentNegotiation.getMediaType(request))
                 .entity("User logged out");
 
     }
@@ -123,13 +111,21 @@ public class UserController {
                     .entity("No username provided. Try again?");
         }
 
-        userData.deleteUser(username);
+        if (Util.hasIfMatch(request)) {
+            final Versioned<User> existing = userData.findVersionedUserByName(username);
+            if (existing == null || !Util.matchesIfMatch(request, existing.getVersion())
+                    || !userData.deleteUser(username, existing.getVersion())) {
+                return preconditionFailed();
+            }
+        } else {
+            userData.deleteUser(username);
+        }
 
         final User user = userData.findUserByName(username);
 
         if (null == user) {
             return new ResponseContext()
-                    .contentType(Util.getMediaType(request))
+                    .contentType(ContentNegotiation.getMediaType(request))
                     .entity(user);
         } else {
             return new ResponseContext().status(Response.Status.NOT_MODIFIED).entity("User couldn't be deleted.");
@@ -149,18 +145,36 @@ public class UserController {
                     .entity("No User provided. Try again?");
         }
 
-        final User existingUser = userData.findUserByName(username);
-
-        if (existingUser == null) {
-            return new ResponseContext().status(Response.Status.NOT_FOUND).entity("User not found");
+        if (user.getUsername() == null) {
+            return new ResponseContext()
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity("No username provided. Try again?");
         }
 
-        userData.deleteUser(existingUser.getUsername());
-        userData.addUser(user);
-
-        return new ResponseContext()
-                .contentType(Util.getMediaType(request))
-                .entity(user);
+        // compare-and-set on the stored version; a lost race is retried unless If-Match pins the version
+        while (true) {
+            final Versioned<User> existingUser = userData.findVersionedUserByName(username);
+
+            if (existingUser == null) {
+                return new ResponseContext().status(Response.Status.NOT_FOUND).entity("User not found");
+            }
+            if (!Util.matchesIfMatch(request, existingUser.getVersion())) {
+                return preconditionFailed();
+            }
+            if (!username.equals(user.getUsername()) && userData.findUserByName(user.getUsername()) != null) {
+                return new ResponseContext()
+                        .status(Response.Status.CONFLICT)
+                        .entity("Username " + user.getUsername() + " is already taken.");
+            }
+
+            final Versioned<User> updated = userData.replaceUser(username, user, existingUser.getVersion());
+            if (updated != null) {
+                return new ResponseContext()
+                        .contentType(ContentNegotiation.getMediaType(request))
+                        .header(Util.ETAG, Util.getETag(request, updated.getVersion()))
+                        .entity(user);
+            }
+        }
     }
 
     public ResponseContext updateUser(final RequestContext request, final String updatedUser, final Long id, final String username,
@@ -169,5 +183,37 @@ public class UserController {
         final User user = UserData.createUser(id, username, firstName, lastName, email, phone, userStatus);
         return updateUser(request, updatedUser, user);
     }
+
+    /**
+     * Checks the whole batch the way {@link #createUser} checks one user before storing any of it, then stores it
+     * as one update.
+     */
+    private ResponseContext addUsers(final RequestContext request, final User[] users) {
+        if (users == null || users.length == 0) {
+            return new ResponseContext()
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity("No User provided. Try again?");
+        }
+
+        for (int i = 0; i < users.length; i++) {
+            if (users[i] == null || users[i].getUsername() == null) {
+                return new ResponseContext()
+                        .status(Response.Status.BAD_REQUEST)
+                        .entity("No username provided for user " + i + ". Try again?");
+            }
+        }
+
+        userData.addUsers(Arrays.asList(users));
+
+        return new ResponseContext()
+                .contentType(ContentNegotiation.getMediaType(request))
+                .entity(users);
+    }
+
+    private ResponseContext preconditionFailed() {
+        return new ResponseContext()
+                .status(Response.Status.PRECONDITION_FAILED)
+                .entity("User was modified. Fetch it again and retry.");
+    }
 }
 
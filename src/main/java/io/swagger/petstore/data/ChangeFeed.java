@@ -0,0 +1,254 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.data;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The most recent mutations of pets, orders and users, kept in a bounded ring of {@value #CAPACITY_PROPERTY}
+ * events (default {@value #DEFAULT_CAPACITY}). Writers claim a sequence number and store their event in its
+ * slot without locking or waiting for readers; a reader that falls a whole ring behind finds its next slot
+ * overwritten and is told to resync instead of holding writers up.
+ * <p>
+ * Sequence numbers start from the clock at startup, in microseconds, so unless the previous run published more
+ * than a thousand events a millisecond they keep increasing across restarts and a client resuming from an
+ * earlier run is told to resync.
+ */
+public final class ChangeFeed {
+    public static final String PET = "pet";
+    public static final String ORDER = "order";
+    public static final String USER = "user";
+    public static final String PUT = "put";
+    public static final String DELETE = "delete";
+
+    static final String CAPACITY_PROPERTY = "petstore.feed.capacity";
+    static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final ChangeFeed INSTANCE = new ChangeFeed(Integer.getInteger(CAPACITY_PROPERTY,
+            DEFAULT_CAPACITY), TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()));
+
+    private final AtomicReferenceArray<Event> ring;
+    private final int mask;
+    private final long first;
+    private final AtomicLong next;
+    private final Queue<Thread> waiting = new ConcurrentLinkedQueue<>();
+    // per entity, indexed by index(entity): the sequence number and time in milliseconds of its newest event
+    private final AtomicLongArray latestByEntity = new AtomicLongArray(3);
+    private final AtomicLongArray modifiedByEntity = new AtomicLongArray(3);
+
+    ChangeFeed(final int capacity, final long first) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException(CAPACITY_PROPERTY + " must be a power of two: " + capacity);
+        }
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.first = first;
+        this.next = new AtomicLong(first);
+        for (int i = 0; i < latestByEntity.length(); i++) {
+            latestByEntity.set(i, first - 1);
+            modifiedByEntity.set(i, TimeUnit.MICROSECONDS.toMillis(first));
+        }
+    }
+
+    public static ChangeFeed get() {
+        return INSTANCE;
+    }
+
+    /**
+     * The sequence number of the newest event claimed so far; one less than the first if there is none.
+     */
+    public long latest() {
+        return next.get() - 1;
+    }
+
+    /**
+     * The sequence number of the newest event about {@link #PET}, {@link #ORDER} or {@link #USER} entities, or
+     * one less than the first if there is none. It changes, never to an earlier value, after every change to
+     * those entities is visible, so it validates anything derived from all of them.
+     */
+    public long latest(final String entity) {
+        return latestByEntity.get(index(entity));
+    }
+
+    /**
+     * The time in milliseconds of the newest event about the given kind of entity, or of startup if there is
+     * none.
+     */
+    public long lastModified(final String entity) {
+        return modifiedByEntity.get(index(entity));
+    }
+
+    /**
+     * A cursor positioned after the given sequence number, or after the newest event if it is null.
+     */
+    public Cursor subscribe(final Long after) {
+        return new Cursor(after == null ? latest() : after);
+    }
+
+    void publish(final String entity, final String operation, final Object key, final long version) {
+        final Event event = new Event(next.getAndIncrement(), entity, operation, key, version);
+        latestByEntity.accumulateAndGet(index(entity), event.sequence, Math::max);
+        modifiedByEntity.accumulateAndGet(index(entity), System.currentTimeMillis(), Math::max);
+        final int slot = (int) event.sequence & mask;
+        Event previous;
+        do {
+            previous = ring.get(slot);
+            if (previous != null && previous.sequence > event.sequence) {
+                // this writer stalled for a whole lap; its event is already lost to every reader
+                return;
+            }
+        } while (!ring.compareAndSet(slot, previous, event));
+
+        for (Thread reader = waiting.poll(); reader != null; reader = waiting.poll()) {
+            LockSupport.unpark(reader);
+        }
+    }
+
+    private static int index(final String entity) {
+        switch (entity) {
+            case PET:
+                return 0;
+            case ORDER:
+                return 1;
+            case USER:
+                return 2;
+            default:
+                throw new IllegalArgumentException("Unknown entity " + entity);
+        }
+    }
+
+    /**
+     * One change. Resync events carry no change; they tell the reader that events were lost and that it should
+     * reload what it needs and resume after {@link #getSequence()}.
+     */
+    public static final class Event {
+        private final long sequence;
+        private final String entity;
+        private final String operation;
+        private final Object key;
+        private final long version;
+
+        private Event(final long sequence, final String entity, final String operation, final Object key,
+                      final long version) {
+            this.sequence = sequence;
+            this.entity = entity;
+            this.operation = operation;
+            this.key = key;
+            this.version = version;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * {@link #PET}, {@link #ORDER} or {@link #USER}, or null for a resync event.
+         */
+        public String getEntity() {
+            return entity;
+        }
+
+        /**
+         * {@link #PUT} or {@link #DELETE}.
+         */
+        public String getOperation() {
+            return operation;
+        }
+
+        /**
+         * The pet or order id, or the username.
+         */
+        public Object getKey() {
+            return key;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public boolean isResync() {
+            return entity == null;
+        }
+    }
+
+    /**
+     * Reads the events after a sequence number in order. A cursor belongs to one reader thread.
+     */
+    public final class Cursor {
+        private long after;
+
+        private Cursor(final long after) {
+            this.after = after;
+        }
+
+        /**
+         * The next event, a resync event if the next event is no longer available, or null if none was
+         * published within the timeout.
+         */
+        public Event next(final long timeout, final TimeUnit unit) {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            Event event = poll();
+            while (event == null) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                final Thread reader = Thread.currentThread();
+                waiting.add(reader);
+                // checked again after registering, so a publish in between is not missed
+                event = poll();
+                if (event == null) {
+                    LockSupport.parkNanos(this, remaining);
+                    event = poll();
+                }
+                waiting.remove(reader);
+            }
+            return event;
+        }
+
+        /**
+         * The next event, a resync event if the next event is no longer available, or null if it has not been
+         * published yet. Never blocks.
+         */
+        public Event poll() {
+            final long wanted = after + 1;
+            if (wanted < first || wanted > next.get()) {
+                return resync();
+            }
+            final Event event = ring.get((int) wanted & mask);
+            if (event == null || event.sequence < wanted) {
+                return null;
+            }
+            if (event.sequence > wanted) {
+                return resync();
+            }
+            after = wanted;
+            return event;
+        }
+
+        private Event resync() {
+            after = latest();
+            return new Event(after, null, null, null, 0);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.swagger.petstore.data;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * What readers of one store are given: the newest state of the store whose mutations are all on disk. Writers
+ * derive the next state from the newest one, logged or not, and install it in the store while holding the lock
+ * of this view, which they also hold to queue the state's records in the {@link MutationLog}. The state is made
+ * visible once the log has flushed those records. A mutation whose flush fails is never seen; its writer gets
+ * the error, and the log refuses every later mutation.
+ * <p>
+ * The records of a state are queued after those of every state before it, and the log flushes its records in the
+ * order they were queued, so once a state's own records are on disk, so is everything else it holds.
+ * <p>
+ * Views of several stores are taken at one point in time by {@link #acrossStores(Supplier)}.
+ */
+final class DurableView<T> {
+    // held shared while a view makes a state visible, and exclusively while views of all stores are taken
+    private static final ReentrantReadWriteLock VISIBILITY = new ReentrantReadWriteLock();
+
+    private final MutationLog log;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // counts the states installed under the write lock, so a writer that finished waiting late does not hide a
+    // newer state another writer already made visible
+    private long installed;
+    private final AtomicReference<Installed<T>> visible;
+
+    DurableView(final MutationLog log, final T initial) {
+        this.log = log;
+        this.visible = new AtomicReference<>(new Installed<>(initial, 0));
+    }
+
+    /**
+     * The newest state whose mutations are all on disk. Never blocks.
+     */
+    T get() {
+        return visible.get().state;
+    }
+
+    /**
+     * Runs the given function, which takes the states of several views, while no view makes a new state visible.
+     * Taking a state never blocks, so writers are held up only that long.
+     */
+    static <V> V acrossStores(final Supplier<V> views) {
+        VISIBILITY.writeLock().lock();
+        try {
+            return views.get();
+        } finally {
+            VISIBILITY.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Installs the next state of the store and queues its records, then waits until they are on disk and makes
+     * the state visible. A write that turns out to change nothing queues no records; it still waits for the
+     * records queued before it, since it decided against the state they made.
+     *
+     * @param install derives the next state from the newest one and installs it in the store, or returns the
+     *                newest state unchanged
+     * @param records queues the log records of the installed state and returns the sequence number of the last
+     *                one, or {@link MutationLog#queued()} if it logs nothing
+     * @return the installed state
+     * @throws java.io.UncheckedIOException if the log failed; nothing is installed once it has, and a state whose
+     *                                      records were not flushed is never made visible
+     */
+    T write(final Supplier<T> install, final ToLongFunction<T> records) {
+        final Installed<T> next;
+        final long sequence;
+        writeLock.lock();
+        try {
+            log.ensureWritable();
+            final T state = install.get();
+            sequence = records.applyAsLong(state);
+            next = new Installed<>(state, ++installed);
+        } finally {
+            writeLock.unlock();
+        }
+        log.awaitDurable(sequence);
+        VISIBILITY.readLock().lock();
+        try {
+            visible.accumulateAndGet(next,
+                    (current, candidate) -> candidate.order > current.order ? candidate : current);
+        } finally {
+            VISIBILITY.readLock().unlock();
+        }
+        return next.state;
+    }
+
+    private static final class Installed<T> {
+        private final T state;
+        private final long order;
+
+        private Installed(final T state, final long order) {
+            this.state = state;
+            this.order = order;
+        }
+    }
+}
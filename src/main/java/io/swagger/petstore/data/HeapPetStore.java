@@ -0,0 +1,96 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.swagger.petstore.data;
+
+import io.swagger.petstore.model.Pet;
+import io.swagger.petstore.model.Tag;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Keeps the {@link Pet} objects themselves in the catalog. Readers take the current catalog without locking;
+ * writers install a new version with compareAndSet.
+ */
+final class HeapPetStore implements PetStore {
+    private final AtomicReference<PetCatalog> catalog = new AtomicReference<>(PetCatalog.empty());
+
+    @Override
+    public PetCatalog catalog() {
+        return catalog.get();
+    }
+
+    @Override
+    public StoredPet store(final Pet pet, final long version) {
+        return new HeapPet(pet, version);
+    }
+
+    @Override
+    public PetCatalog update(final UnaryOperator<PetCatalog> mutation) {
+        PetCatalog current;
+        PetCatalog next;
+        do {
+            current = catalog.get();
+            next = mutation.apply(current);
+        } while (next != current && !catalog.compareAndSet(current, next));
+        return next;
+    }
+
+    private static final class HeapPet implements StoredPet {
+        private final Pet pet;
+        private final long version;
+
+        private HeapPet(final Pet pet, final long version) {
+            this.pet = pet;
+            this.version = version;
+        }
+
+        @Override
+        public long getId() {
+            return pet.getId();
+        }
+
+        @Override
+        public long getVersion() {
+            return version;
+        }
+
+        @Override
+        public String getStatus() {
+            return pet.getStatus();
+        }
+
+        @Override
+        public List<String> getTagNames() {
+            final List<String> names = new ArrayList<>();
+            if (pet.getTags() != null) {
+                for (final Tag tag : pet.getTags()) {
+                    if (tag != null && tag.getName() != null) {
+                        names.add(tag.getName());
+                    }
+                }
+            }
+            return names;
+        }
+
+        @Override
+        public Pet toPet() {
+            return pet;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.data;
+
+import io.swagger.petstore.model.Order;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable per-status order quantity counters. Each version of the order table carries its own, updated by copy
+ * in the same step that installs the table, so a snapshot is read from one table version: a replaced order is
+ * never counted twice, not at all, or below zero. There are only a handful of statuses, so a copy costs about as
+ * much as a map lookup.
+ */
+final class InventoryCounters {
+    static final InventoryCounters EMPTY = new InventoryCounters(new String[0], new long[0], new long[0]);
+
+    private final String[] statuses;
+    private final long[] quantities;
+    private final long[] orders;
+
+    private InventoryCounters(final String[] statuses, final long[] quantities, final long[] orders) {
+        this.statuses = statuses;
+        this.quantities = quantities;
+        this.orders = orders;
+    }
+
+    /**
+     * These counters with the previous order, if any, taken out and the current one, if any, added.
+     */
+    InventoryCounters replace(final Order previous, final Order current) {
+        if (previous == null && current == null) {
+            return this;
+        }
+        InventoryCounters counters = this;
+        if (previous != null) {
+            counters = counters.add(previous.getStatus(), -previous.getQuantity(), -1);
+        }
+        if (current != null) {
+            counters = counters.add(current.getStatus(), current.getQuantity(), 1);
+        }
+        return counters;
+    }
+
+    Map<String, Integer> snapshot() {
+        final Map<String, Integer> countByStatus = new HashMap<>();
+        for (int i = 0; i < statuses.length; i++) {
+            countByStatus.put(statuses[i], (int) quantities[i]);
+        }
+        return countByStatus;
+    }
+
+    private InventoryCounters add(final String status, final long quantity, final long count) {
+        int i = 0;
+        while (i < statuses.length && !Objects.equals(statuses[i], status)) {
+            i++;
+        }
+        if (i < statuses.length && orders[i] + count == 0) {
+            // the last order of the status is gone, so it drops out rather than stay behind as a zero
+            final int last = statuses.length - 1;
+            final String[] nextStatuses = Arrays.copyOf(statuses, last);
+            final long[] nextQuantities = Arrays.copyOf(quantities, last);
+            final long[] nextOrders = Arrays.copyOf(orders, last);
+            if (i < last) {
+                nextStatuses[i] = statuses[last];
+                nextQuantities[i] = quantities[last];
+                nextOrders[i] = orders[last];
+            }
+            return new InventoryCounters(nextStatuses, nextQuantities, nextOrders);
+        }
+        final int size = i < statuses.length ? statuses.length : statuses.length + 1;
+        final String[] nextStatuses = Arrays.copyOf(statuses, size);
+        final long[] nextQuantities = Arrays.copyOf(quantities, size);
+        final long[] nextOrders = Arrays.copyOf(orders, size);
+        nextStatuses[i] = status;
+        nextQuantities[i] += quantity;
+        nextOrders[i] += count;
+        return new InventoryCounters(nextStatuses, nextQuantities, nextOrders);
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.data;
+
+import io.swagger.petstore.model.Order;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The original backend: orders kept in a list that every lookup scans, under one lock.
+ */
+final class ListOrderRepository implements OrderRepository {
+    private final List<Versioned<Order>> orders = new ArrayList<>();
+    // counted on from the clock, so a version held from an earlier run never matches; see Versioned
+    private long versions = Versioned.startingVersion();
+    private final ChangeFeed feed = ChangeFeed.get();
+
+    ListOrderRepository() {
+        for (final Order order : SampleData.orders()) {
+            addOrder(order);
+        }
+    }
+
+    @Override
+    public Order getOrderById(final long orderId) {
+        final Versioned<Order> order = getVersionedOrderById(orderId);
+        return order == null ? null : order.getValue();
+    }
+
+    @Override
+    public synchronized Versioned<Order> getVersionedOrderById(final long orderId) {
+        final int index = indexOf(orderId);
+        return index < 0 ? null : orders.get(index);
+    }
+
+    @Override
+    public synchronized Map<String, Integer> getCountByStatus() {
+        final Map<String, Integer> countByStatus = new HashMap<>();
+        for (final Versioned<Order> order : orders) {
+            countByStatus.merge(order.getValue().getStatus(), order.getValue().getQuantity(), Integer::sum);
+        }
+        return countByStatus;
+    }
+
+    @Override
+    public synchronized Iterator<Order> iterateOrders() {
+        final List<Order> copy = new ArrayList<>(orders.size());
+        for (final Versioned<Order> order : orders) {
+            copy.add(order.getValue());
+        }
+        return copy.iterator();
+    }
+
+    @Override
+    public synchronized Iterator<Order> iterateOrdersByShipDate(final Date from, final Date to) {
+        final List<Order> matches = new ArrayList<>();
+        for (final Versioned<Order> order : orders) {
+            final Date shipDate = order.getValue().getShipDate();
+            if (shipDate != null && !shipDate.before(from) && shipDate.before(to)) {
+                matches.add(order.getValue());
+            }
+        }
+        matches.sort(Comparator.comparing(Order::getShipDate).thenComparingLong(Order::getId));
+        return matches.iterator();
+    }
+
+    @Override
+    public synchronized Versioned<Order> addOrder(final Order order) {
+        final Versioned<Order> stored = new Versioned<>(order, ++versions);
+        final int index = indexOf(order.getId());
+        if (index < 0) {
+            orders.add(stored);
+        } else {
+            orders.set(index, stored);
+        }
+        feed.publish(ChangeFeed.ORDER, ChangeFeed.PUT, order.getId(), stored.getVersion());
+        return stored;
+    }
+
+    @Override
+    public synchronized void deleteOrderById(final Long orderId) {
+        if (orders.removeIf(order -> order.getValue().getId() == orderId)) {
+            feed.publish(ChangeFeed.ORDER, ChangeFeed.DELETE, orderId, ++versions);
+        }
+    }
+
+    @Override
+    public synchronized boolean deleteOrderById(final long orderId, final long expectedVersion) {
+        final int index = indexOf(orderId);
+        if (index < 0 || orders.get(index).getVersion() != expectedVersion) {
+            return false;
+        }
+        orders.remove(index);
+        feed.publish(ChangeFeed.ORDER, ChangeFeed.DELETE, orderId, ++versions);
+        return true;
+    }
+
+    private int indexOf(final long orderId) {
+        for (int i = 0; i < orders.size(); i++) {
+            if (orders.get(i).getValue().getId() == orderId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.data;
+
+import io.swagger.petstore.model.Pet;
+import io.swagger.petstore.model.Tag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * The original backend: pets kept in a list that every lookup scans, under one lock. Simple and slow; useful as a
+ * reference for the other backends.
+ */
+final class ListPetRepository implements PetRepository {
+    private final List<Versioned<Pet>> pets = new ArrayList<>();
+    // counted on from the clock, so a version held from an earlier run never matches; see Versioned
+    private long versions = Versioned.startingVersion();
+    private final ChangeFeed feed = ChangeFeed.get();
+
+    ListPetRepository() {
+        for (final Pet pet : SampleData.pets()) {
+            addPet(pet);
+        }
+    }
+
+    @Override
+    public Pet getPetById(final long petId) {
+        final Versioned<Pet> pet = getVersionedPetById(petId);
+        return pet == null ? null : pet.getValue();
+    }
+
+    @Override
+    public synchronized Versioned<Pet> getVersionedPetById(final long petId) {
+        final int index = indexOf(petId);
+        return index < 0 ? null : pets.get(index);
+    }
+
+    @Override
+    public List<Pet> findPetByStatus(final String status, final Long afterId, final int limit) {
+        final Set<String> statuses = new HashSet<>(Arrays.asList(status.split(",")));
+        return select(pet -> statuses.contains(pet.getStatus()), afterId, limit);
+    }
+
+    @Override
+    public Iterator<Pet> iteratePetsByStatus(final String status, final Long afterId) {
+        return findPetByStatus(status, afterId, Integer.MAX_VALUE).iterator();
+    }
+
+    @Override
+    public List<Pet> findPetByTags(final List<String> tags, final boolean matchAll, final Long afterId,
+                                   final int limit) {
+        final Set<String> wanted = new HashSet<>(tags);
+        return select(pet -> {
+            final Set<String> names = tagNames(pet);
+            if (matchAll) {
+                return !wanted.isEmpty() && names.containsAll(wanted);
+            }
+            names.retainAll(wanted);
+            return !names.isEmpty();
+        }, afterId, limit);
+    }
+
+    @Override
+    public Iterator<Pet> iteratePetsByTags(final List<String> tags, final boolean matchAll, final Long afterId) {
+        return findPetByTags(tags, matchAll, afterId, Integer.MAX_VALUE).iterator();
+    }
+
+    @Override
+    public Iterator<Pet> iteratePets() {
+        return select(pet -> true, null, Integer.MAX_VALUE).iterator();
+    }
+
+    @Override
+    public synchronized Versioned<Pet> addPet(final Pet pet) {
+        final Versioned<Pet> stored = new Versioned<>(pet, ++versions);
+        final int index = indexOf(pet.getId());
+        if (index < 0) {
+            pets.add(stored);
+        } else {
+            pets.set(index, stored);
+        }
+        feed.publish(ChangeFeed.PET, ChangeFeed.PUT, pet.getId(), stored.getVersion());
+        return stored;
+    }
+
+    @Override
+    public synchronized long addPets(final List<Pet> pets) {
+        final long version = ++versions;
+        for (final Pet pet : pets) {
+            final Versioned<Pet> stored = new Versioned<>(pet, version);
+            final int index = indexOf(pet.getId());
+            if (index < 0) {
+                this.pets.add(stored);
+            } else {
+                this.pets.set(index, stored);
+            }
+            feed.publish(ChangeFeed.PET, ChangeFeed.PUT, pet.getId(), version);
+        }
+        return version;
+    }
+
+    @Override
+    public synchronized List<Versioned<Pet>> replacePets(final List<Pet> pets) {
+        final List<Versioned<Pet>> stored = new ArrayList<>(pets.size());
+        final long version = versions + 1;
+        for (final Pet pet : pets) {
+            final int index = indexOf(pet.getId());
+            final Versioned<Pet> replaced = index < 0 ? null : new Versioned<>(pet, version);
+            if (replaced != null) {
+                this.pets.set(index, replaced);
+                versions = version;
+                feed.publish(ChangeFeed.PET, ChangeFeed.PUT, pet.getId(), version);
+            }
+            stored.add(replaced);
+        }
+        return stored;
+    }
+
+    @Override
+    public synchronized Versioned<Pet> replacePet(final Pet pet, final long expectedVersion) {
+        final int index = indexOf(pet.getId());
+        if (index < 0 || pets.get(index).getVersion() != expectedVersion) {
+            return null;
+        }
+        final Versioned<Pet> stored = new Versioned<>(pet, ++versions);
+        pets.set(index, stored);
+        feed.publish(ChangeFeed.PET, ChangeFeed.PUT, pet.getId(), stored.getVersion());
+        return stored;
+    }
+
+    @Override
+    public synchronized void deletePetById(final Long petId) {
+        if (pets.removeIf(pet -> pet.getValue().getId() == petId)) {
+            feed.publish(ChangeFeed.PET, ChangeFeed.DELETE, petId, ++versions);
+        }
+    }
+
+    @Override
+    public synchronized boolean deletePetById(final long petId, final long expectedVersion) {
+        final int index = indexOf(petId);
+        if (index < 0 || pets.get(index).getVersion() != expectedVersion) {
+            return false;
+        }
+        pets.remove(index);
+        feed.publish(ChangeFeed.PET, ChangeFeed.DELETE, petId, ++versions);
+        return true;
+    }
+
+    private int indexOf(final long petId) {
+        for (int i = 0; i < pets.size(); i++) {
+            if (pets.get(i).getValue().getId() == petId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private synchronized List<Pet> select(final Predicate<Pet> filter, final Long afterId, final int limit) {
+        final List<Pet> result = new ArrayList<>();
+        for (final Versioned<Pet> pet : pets) {
+            if ((afterId == null || pet.getValue().getId() > afterId) && filter.test(pet.getValue())) {
+                result.add(pet.getValue());
+            }
+        }
+        result.sort(Comparator.comparingLong(Pet::getId));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    private static Set<String> tagNames(final Pet pet) {
+        final Set<String> names = new HashSet<>();
+        if (pet.getTags() != null) {
+            for (final Tag tag : pet.getTags()) {
+                if (tag != null && tag.getName() != null) {
+                    names.add(tag.getName());
+                }
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.data;
+
+import io.swagger.petstore.model.User;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The original backend: users kept in a list that every lookup scans, under one lock.
+ */
+final class ListUserRepository implements UserRepository {
+    private final List<Versioned<User>> users = new ArrayList<>();
+    // counted on from the clock, so a version held from an earlier run never matches; see Versioned
+    private long versions = Versioned.startingVersion();
+    private final ChangeFeed feed = ChangeFeed.get();
+
+    ListUserRepository() {
+        for (final User user : SampleData.users()) {
+            addUser(user);
+        }
+    }
+
+    @Override
+    public User findUserByName(final String username) {
+        final Versioned<User> user = findVersionedUserByName(username);
+        return user == null ? null : user.getValue();
+    }
+
+    @Override
+    public synchronized Versioned<User> findVersionedUserByName(final String username) {
+        final int index = indexOf(username);
+        return index < 0 ? null : users.get(index);
+    }
+
+    @Override
+    public synchronized User findUserById(final long id) {
+        for (final Versioned<User> user : users) {
+            if (user.getValue().getId() == id) {
+                return user.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized Iterator<User> iterateUsers() {
+        final List<User> copy = new ArrayList<>(users.size());
+        for (final Versioned<User> user : users) {
+            copy.add(user.getValue());
+        }
+        return copy.iterator();
+    }
+
+    @Override
+    public synchronized Versioned<User> addUser(final User user) {
+        final Versioned<User> stored = new Versioned<>(user, ++versions);
+        final int index = indexOf(user.getUsername());
+        if (index < 0) {
+            users.add(stored);
+        } else {
+            users.set(index, stored);
+        }
+        feed.publish(ChangeFeed.USER, ChangeFeed.PUT, user.getUsername(), stored.getVersion());
+        return stored;
+    }
+
+    @Override
+    public synchronized long addUsers(final List<User> users) {
+        // one scan of the list for the whole batch rather than one per user
+        final Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < this.users.size(); i++) {
+            indexes.put(this.users.get(i).getValue().getUsername(), i);
+        }
+        final long version = ++versions;
+        for (final User user : users) {
+            final Versioned<User> stored = new Versioned<>(user, version);
+            final Integer index = indexes.get(user.getUsername());
+            if (index == null) {
+                indexes.put(user.getUsername(), this.users.size());
+                this.users.add(stored);
+            } else {
+                this.users.set(index, stored);
+            }
+            feed.publish(ChangeFeed.USER, ChangeFeed.PUT, user.getUsername(), version);
+        }
+        return version;
+    }
+
+    @Override
+    public synchronized Versioned<User> replaceUser(final String username, final User user,
+                                                    final long expectedVersion) {
+        if (!username.equals(user.getUsername()) && indexOf(user.getUsername()) >= 0) {
+            return null;
+        }
+        if (!deleteUser(username, expectedVersion)) {
+            return null;
+        }
+        return addUser(user);
+    }
+
+    @Override
+    public synchronized void deleteUser(final String username) {
+        final int index = indexOf(username);
+        if (index >= 0) {
+            users.remove(index);
+            feed.publish(ChangeFeed.USER, ChangeFeed.DELETE, username, ++versions);
+        }
+    }
+
+    @Override
+    public synchronized boolean deleteUser(final String username, final long expectedVersion) {
+        final int index = indexOf(username);
+        if (index < 0 || users.get(index).getVersion() != expectedVersion) {
+            return false;
+        }
+        users.remove(index);
+        feed.publish(ChangeFeed.USER, ChangeFeed.DELETE, username, ++versions);
+        return true;
+    }
+
+    private int indexOf(final String username) {
+        if (username == null) {
+            return -1;
+        }
+        for (int i = 0; i < users.size(); i++) {
+            if (username.equals(users.get(i).getValue().getUsername())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
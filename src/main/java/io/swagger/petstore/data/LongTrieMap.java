@@ -0,0 +1,315 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.data;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Immutable map from long keys to non-null values, stored as a 32-way bitmap trie over the key bits.
+ * Updates copy only the path to the changed leaf and share everything else, so every instance is a
+ * stable snapshot that can be read without locking. Iteration is in ascending (signed) key order.
+ */
+final class LongTrieMap<V> implements Iterable<V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int TOP_SHIFT = 60;
+    private static final int LEVELS = TOP_SHIFT / BITS + 1;
+    private static final Node EMPTY_NODE = new Node(0, new Object[0]);
+    private static final LongTrieMap<?> EMPTY = new LongTrieMap<>(EMPTY_NODE, 0);
+
+    private final Node root;
+    private final int size;
+
+    private LongTrieMap(final Node root, final int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> LongTrieMap<V> empty() {
+        return (LongTrieMap<V>) EMPTY;
+    }
+
+    /**
+     * Builds a map from the first size keys, which must be strictly ascending, and their values. Each node is
+     * built once, so this is much cheaper than adding the keys one at a time.
+     */
+    static <V> LongTrieMap<V> ofSorted(final long[] keys, final Object[] values, final int size) {
+        if (size == 0) {
+            return empty();
+        }
+        for (int i = 0; i < size; i++) {
+            Objects.requireNonNull(values[i]);
+        }
+        return new LongTrieMap<>(build(keys, values, 0, size, TOP_SHIFT), size);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(final long key) {
+        final long bits = key ^ Long.MIN_VALUE;
+        Node node = root;
+        for (int shift = TOP_SHIFT; ; shift -= BITS) {
+            final int bit = 1 << index(bits, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            final Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (shift == 0) {
+                return (V) slot;
+            }
+            node = (Node) slot;
+        }
+    }
+
+    boolean containsKey(final long key) {
+        return get(key) != null;
+    }
+
+    LongTrieMap<V> plus(final long key, final V value) {
+        Objects.requireNonNull(value);
+        final int newSize = containsKey(key) ? size : size + 1;
+        return new LongTrieMap<>(put(root, key ^ Long.MIN_VALUE, TOP_SHIFT, value), newSize);
+    }
+
+    /**
+     * Adds or replaces the first size keys, which must be strictly ascending, with their values. Every node on
+     * the paths to those keys is copied once rather than once per key.
+     */
+    LongTrieMap<V> plusAll(final long[] keys, final Object[] values, final int size) {
+        if (size == 0) {
+            return this;
+        }
+        for (int i = 0; i < size; i++) {
+            Objects.requireNonNull(values[i]);
+        }
+        final int[] added = new int[1];
+        final Node newRoot = merge(root, keys, values, 0, size, TOP_SHIFT, added);
+        return new LongTrieMap<>(newRoot, this.size + added[0]);
+    }
+
+    LongTrieMap<V> minus(final long key) {
+        final Node newRoot = remove(root, key ^ Long.MIN_VALUE, TOP_SHIFT);
+        if (newRoot == root) {
+            return this;
+        }
+        return new LongTrieMap<>(newRoot == null ? EMPTY_NODE : newRoot, size - 1);
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+        return valuesFrom(Long.MIN_VALUE);
+    }
+
+    /**
+     * Values whose keys are greater than or equal to the given key, in key order. Seeking costs one
+     * root-to-leaf descent regardless of how many keys precede it.
+     */
+    Iterator<V> valuesFrom(final long fromKey) {
+        return new ValueIterator<>(root, fromKey ^ Long.MIN_VALUE);
+    }
+
+    private static int index(final long bits, final int shift) {
+        return (int) (bits >>> shift) & MASK;
+    }
+
+    private static Node put(final Node node, final long bits, final int shift, final Object value) {
+        final int bit = 1 << index(bits, shift);
+        final int pos = Integer.bitCount(node.bitmap & (bit - 1));
+        final boolean present = (node.bitmap & bit) != 0;
+
+        final Object child;
+        if (shift == 0) {
+            child = value;
+        } else {
+            child = put(present ? (Node) node.slots[pos] : EMPTY_NODE, bits, shift - BITS, value);
+        }
+
+        if (present) {
+            final Object[] slots = node.slots.clone();
+            slots[pos] = child;
+            return new Node(node.bitmap, slots);
+        }
+        final Object[] slots = new Object[node.slots.length + 1];
+        System.arraycopy(node.slots, 0, slots, 0, pos);
+        slots[pos] = child;
+        System.arraycopy(node.slots, pos, slots, pos + 1, node.slots.length - pos);
+        return new Node(node.bitmap | bit, slots);
+    }
+
+    private static Node build(final long[] keys, final Object[] values, final int from, final int to,
+                              final int shift) {
+        int bitmap = 0;
+        for (int i = from; i < to; i++) {
+            bitmap |= 1 << index(keys[i] ^ Long.MIN_VALUE, shift);
+        }
+        final Object[] slots = new Object[Integer.bitCount(bitmap)];
+        int start = from;
+        for (int slot = 0; slot < slots.length; slot++) {
+            final int index = index(keys[start] ^ Long.MIN_VALUE, shift);
+            int end = start + 1;
+            while (end < to && index(keys[end] ^ Long.MIN_VALUE, shift) == index) {
+                end++;
+            }
+            slots[slot] = shift == 0 ? values[start] : build(keys, values, start, end, shift - BITS);
+            start = end;
+        }
+        return new Node(bitmap, slots);
+    }
+
+    private static Node merge(final Node node, final long[] keys, final Object[] values, final int from,
+                              final int to, final int shift, final int[] added) {
+        int bitmap = node.bitmap;
+        for (int i = from; i < to; i++) {
+            bitmap |= 1 << index(keys[i] ^ Long.MIN_VALUE, shift);
+        }
+        final Object[] slots = new Object[Integer.bitCount(bitmap)];
+        int start = from;
+        int oldPos = 0;
+        int slot = 0;
+        for (int remaining = bitmap; remaining != 0; remaining &= remaining - 1) {
+            final int bit = remaining & -remaining;
+            final int index = Integer.numberOfTrailingZeros(bit);
+            final Object existing = (node.bitmap & bit) != 0 ? node.slots[oldPos++] : null;
+            int end = start;
+            while (end < to && index(keys[end] ^ Long.MIN_VALUE, shift) == index) {
+                end++;
+            }
+
+            if (end == start) {
+                slots[slot++] = existing;
+            } else if (existing == null) {
+                added[0] += end - start;
+                slots[slot++] = shift == 0 ? values[start] : build(keys, values, start, end, shift - BITS);
+            } else {
+                slots[slot++] = shift == 0 ? values[start]
+                        : merge((Node) existing, keys, values, start, end, shift - BITS, added);
+            }
+            start = end;
+        }
+        return new Node(bitmap, slots);
+    }
+
+    /**
+     * Returns the same node when the key is absent and null when the node becomes empty.
+     */
+    private static Node remove(final Node node, final long bits, final int shift) {
+        final int bit = 1 << index(bits, shift);
+        if ((node.bitmap & bit) == 0) {
+            return node;
+        }
+        final int pos = Integer.bitCount(node.bitmap & (bit - 1));
+
+        if (shift != 0) {
+            final Node child = (Node) node.slots[pos];
+            final Node newChild = remove(child, bits, shift - BITS);
+            if (newChild == child) {
+                return node;
+            }
+            if (newChild != null) {
+                final Object[] slots = node.slots.clone();
+                slots[pos] = newChild;
+                return new Node(node.bitmap, slots);
+            }
+        }
+
+        if (node.slots.length == 1) {
+            return null;
+        }
+        final Object[] slots = new Object[node.slots.length - 1];
+        System.arraycopy(node.slots, 0, slots, 0, pos);
+        System.arraycopy(node.slots, pos + 1, slots, pos, slots.length - pos);
+        return new Node(node.bitmap & ~bit, slots);
+    }
+
+    private static final class Node {
+        private final int bitmap;
+        private final Object[] slots;
+
+        private Node(final int bitmap, final Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    private static final class ValueIterator<V> implements Iterator<V> {
+        private final Node[] nodes = new Node[LEVELS];
+        private final int[] positions = new int[LEVELS];
+        private int depth;
+        private Object next;
+
+        private ValueIterator(final Node root, final long fromBits) {
+            nodes[0] = root;
+            for (int shift = TOP_SHIFT; ; shift -= BITS) {
+                final Node node = nodes[depth];
+                final int bit = 1 << index(fromBits, shift);
+                positions[depth] = Integer.bitCount(node.bitmap & (bit - 1));
+                if (shift == 0 || (node.bitmap & bit) == 0) {
+                    // either at a leaf or every remaining slot at this level is past fromBits
+                    break;
+                }
+                nodes[++depth] = (Node) node.slots[positions[depth - 1]];
+            }
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                final Node node = nodes[depth];
+                final int pos = positions[depth];
+                if (pos >= node.slots.length) {
+                    if (--depth >= 0) {
+                        positions[depth]++;
+                    }
+                } else if (depth == LEVELS - 1) {
+                    next = node.slots[pos];
+                    positions[depth]++;
+                    return;
+                } else {
+                    nodes[++depth] = (Node) node.slots[pos];
+                    positions[depth] = 0;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            final V value = (V) next;
+            advance();
+            return value;
+        }
+    }
+}
@@ -0,0 +1,584 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.swagger.petstore.data;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.swagger.v3.core.util.Json;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log shared by the pet, order and user stores, enabled by the {@code disk}
+ * backend of {@link Repositories} in the directory it names. Otherwise the stores stay purely in memory.
+ * <p>
+ * Every record carries the version the store assigned to the mutation, and replay keeps only the newest record
+ * per key. A store queues the records of a mutation while it installs it, and its {@link DurableView} shows the
+ * mutation to readers only once {@link #awaitDurable(long)} returns for them. Flushes are group committed: a
+ * writer that finds no flush in progress writes everything queued so far with one write and one fsync, while the
+ * writers that queued behind it wait for that flush or the next one.
+ * <p>
+ * A failed write or fsync fails the stores closed. The writers waiting on that flush get the error, and every
+ * later mutation is refused by {@link #ensureWritable()} before it is installed. The mutations of the failed
+ * flush were never visible, and their writers were told they failed.
+ * <p>
+ * The log is a series of generation files. {@link Snapshotter} periodically starts a new generation, writes a
+ * {@link SnapshotFile} of all stores and then deletes the generations before it, so replay reads the latest
+ * snapshot plus the log written since.
+ * <p>
+ * Record layout: length (int, of what follows the checksum), CRC32 (int), type (byte), version (long), JSON
+ * payload. A torn record at the tail, left by a crash during a write, is cut off when the log is opened.
+ */
+final class MutationLog {
+    static final String DIRECTORY_PROPERTY = "petstore.log.dir";
+
+    static final byte PET_PUT = 1;
+    static final byte PET_DELETE = 2;
+    static final byte ORDER_PUT = 3;
+    static final byte ORDER_DELETE = 4;
+    static final byte USER_PUT = 5;
+    static final byte USER_DELETE = 6;
+    // added to a put type: the store's version sequence at the time of a snapshot, without payload
+    static final byte SEQUENCE = 0x40;
+
+    private static final Pattern LOG_FILE = Pattern.compile("petstore-(\\d+)\\.log");
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("snapshot-(\\d+)\\.snap");
+
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int INITIAL_BUFFER = 64 * 1024;
+    private static final MutationLog DISABLED = new MutationLog(null, null, new TreeMap<>(), null, 0);
+
+    private final Path directory;
+    private final Path snapshot;
+    // log generations and their recovered lengths, as found when the log was opened
+    private final TreeMap<Long, Long> recovered;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+    private FileChannel channel;
+    private long generation;
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER);
+    private ByteBuffer writing = ByteBuffer.allocate(INITIAL_BUFFER);
+    private long appended;
+    private long appendedBeforeRotation;
+    private long durable;
+    private boolean flushing;
+    // written under the lock, read without it by ensureWritable
+    private volatile IOException failure;
+
+    private MutationLog(final Path directory, final Path snapshot, final TreeMap<Long, Long> recovered,
+                        final FileChannel channel, final long generation) {
+        this.directory = directory;
+        this.snapshot = snapshot;
+        this.recovered = recovered;
+        this.channel = channel;
+        this.generation = generation;
+    }
+
+    /**
+     * The log configured for this process; a log that drops every record if none is configured.
+     */
+    static MutationLog get() {
+        return Holder.INSTANCE;
+    }
+
+    static MutationLog open(final Path directory) throws IOException {
+        Files.createDirectories(directory);
+        final TreeMap<Long, Path> snapshots = list(directory, SNAPSHOT_FILE);
+        final TreeMap<Long, Path> logs = list(directory, LOG_FILE);
+
+        final long snapshotGeneration = snapshots.isEmpty() ? 0 : snapshots.lastKey();
+        final TreeMap<Long, Long> recovered = new TreeMap<>();
+        for (final Map.Entry<Long, Path> log : logs.entrySet()) {
+            if (log.getKey() < snapshotGeneration) {
+                // already covered by the snapshot; left over from a crash before it was cleaned up
+                Files.delete(log.getValue());
+                continue;
+            }
+            final long length = validLength(log.getValue());
+            try (FileChannel file = FileChannel.open(log.getValue(), StandardOpenOption.WRITE)) {
+                file.truncate(length);
+            }
+            recovered.put(log.getKey(), length);
+        }
+
+        final long generation = recovered.isEmpty() ? snapshotGeneration : recovered.lastKey();
+        final FileChannel channel = FileChannel.open(logFile(directory, generation), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return new MutationLog(directory, snapshots.isEmpty() ? null : snapshots.lastEntry().getValue(),
+                recovered, channel, generation);
+    }
+
+    /**
+     * Whether the log held no snapshot and no records when it was opened; the stores seed themselves then.
+     */
+    boolean isEmpty() {
+        if (snapshot != null) {
+            return false;
+        }
+        for (final long length : recovered.values()) {
+            if (length > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Called by the stores before they install a mutation, so that none is installed once the log has failed.
+     *
+     * @throws UncheckedIOException if an earlier write to the log failed
+     */
+    void ensureWritable() {
+        final IOException failed = failure;
+        if (failed != null) {
+            throw new UncheckedIOException("The mutation log failed; the store is read-only", failed);
+        }
+    }
+
+    /**
+     * Logs one mutation and returns once it is on disk.
+     *
+     * @throws UncheckedIOException if the record could not be written; the log accepts no further records then
+     */
+    void append(final byte type, final long version, final Object payload) {
+        awaitDurable(queue(type, version, payload));
+    }
+
+    /**
+     * Logs mutations of one type made at the same version and returns once all of them are on disk.
+     *
+     * @throws UncheckedIOException if the records could not be written; the log accepts no further records then
+     */
+    void appendAll(final byte type, final long version, final Collection<?> payloads) {
+        awaitDurable(queueAll(type, version, payloads));
+    }
+
+    /**
+     * Logs mutations of the given types, one per payload, made at the same version and returns once all of them
+     * are on disk.
+     *
+     * @throws UncheckedIOException if the records could not be written; the log accepts no further records then
+     */
+    void appendAll(final byte[] types, final long version, final Collection<?> payloads) {
+        awaitDurable(queueAll(types, version, payloads));
+    }
+
+    /**
+     * Queues the record of one mutation for the next flush.
+     *
+     * @return the sequence number to {@link #awaitDurable(long) wait} for
+     */
+    long queue(final byte type, final long version, final Object payload) {
+        return queueAll(type, version, Collections.singletonList(payload));
+    }
+
+    /**
+     * Queues the records of mutations of one type made at the same version, such as a batch of pets stored by
+     * one catalog update. The records join a single flush.
+     *
+     * @return the sequence number to {@link #awaitDurable(long) wait} for
+     */
+    long queueAll(final byte type, final long version, final Collection<?> payloads) {
+        final byte[] types = new byte[payloads.size()];
+        Arrays.fill(types, type);
+        return queueAll(types, version, payloads);
+    }
+
+    /**
+     * Queues the records of mutations of the given types, one per payload, made at the same version, such as
+     * the delete and the put of a rename. The records join a single flush.
+     *
+     * @return the sequence number to {@link #awaitDurable(long) wait} for; {@link #queued()} if there are no
+     * payloads
+     */
+    long queueAll(final byte[] types, final long version, final Collection<?> payloads) {
+        if (directory == null || payloads.isEmpty()) {
+            return queued();
+        }
+        final ByteBuffer versionBytes = ByteBuffer.allocate(Long.BYTES).putLong(0, version);
+        final List<byte[]> records = new ArrayList<>(payloads.size());
+        final int[] checksums = new int[payloads.size()];
+        for (final Object payload : payloads) {
+            final byte type = types[records.size()];
+            final byte[] json;
+            try {
+                json = Json.mapper().writeValueAsBytes(payload);
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+            final CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(versionBytes.array(), 0, Long.BYTES);
+            crc.update(json, 0, json.length);
+            checksums[records.size()] = (int) crc.getValue();
+            records.add(json);
+        }
+
+        lock.lock();
+        try {
+            for (int i = 0; i < records.size(); i++) {
+                final byte[] json = records.get(i);
+                final int length = 1 + Long.BYTES + json.length;
+                pending = ensureCapacity(pending, HEADER_BYTES + length);
+                pending.putInt(length).putInt(checksums[i]).put(types[i]).putLong(version).put(json);
+            }
+            return ++appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The sequence number of the records queued last; once it is durable, so is everything queued before.
+     */
+    long queued() {
+        lock.lock();
+        try {
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the snapshot and the records that were in the log when it was opened, and keeps the newest of the
+     * given put and delete types for each key. Deletes are kept too; they mark keys that must stay absent.
+     */
+    <K> Replay<K> replay(final byte putType, final byte deleteType, final Function<Record, K> key) {
+        final Replay<K> replay = new Replay<>();
+        final Consumer<Record> merge = record -> {
+            if (record.type == putType || record.type == deleteType) {
+                replay.latest.merge(key.apply(record), record,
+                        (previous, current) -> current.version > previous.version ? current : previous);
+            }
+            if (record.type == putType || record.type == deleteType || record.type == (putType | SEQUENCE)) {
+                replay.version = Math.max(replay.version, record.version);
+            }
+        };
+
+        try {
+            if (snapshot != null) {
+                SnapshotFile.read(snapshot, merge);
+            }
+            for (final Map.Entry<Long, Long> log : recovered.entrySet()) {
+                read(logFile(directory, log.getKey()), log.getValue(), merge);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return replay;
+    }
+
+    /**
+     * Whether anything was logged since the log was opened or last rotated.
+     */
+    boolean hasAppendedSinceRotation() {
+        lock.lock();
+        try {
+            return appended > appendedBeforeRotation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts a new generation file and returns its number. Every mutation that is not yet installed in the stores
+     * when this returns is logged to the new generation or a later one, since stores queue records only after
+     * installing the mutation.
+     */
+    long rotate() throws IOException {
+        lock.lock();
+        try {
+            while (flushing) {
+                flushed.awaitUninterruptibly();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            final long next = generation + 1;
+            final FileChannel fresh = FileChannel.open(logFile(directory, next), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+            channel.close();
+            channel = fresh;
+            generation = next;
+            appendedBeforeRotation = appended;
+            return next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Path snapshotFile(final long generation) {
+        return directory.resolve("snapshot-" + generation + ".snap");
+    }
+
+    /**
+     * Deletes the log generations and snapshots older than the given generation, once its snapshot is in place.
+     */
+    void deleteBefore(final long generation) throws IOException {
+        for (final Path log : list(directory, LOG_FILE).headMap(generation).values()) {
+            Files.delete(log);
+        }
+        for (final Path old : list(directory, SNAPSHOT_FILE).headMap(generation).values()) {
+            Files.delete(old);
+        }
+    }
+
+    /**
+     * Returns once the records up to the given sequence number are on disk, flushing them along with everything
+     * else queued if no flush is in progress.
+     *
+     * @throws UncheckedIOException if a flush failed; the log accepts no further records then
+     */
+    void awaitDurable(final long sequence) {
+        lock.lock();
+        try {
+            while (durable < sequence) {
+                if (failure != null) {
+                    throw new UncheckedIOException(failure);
+                }
+                if (flushing) {
+                    flushed.awaitUninterruptibly();
+                    continue;
+                }
+
+                // become the leader for everything queued so far
+                flushing = true;
+                final FileChannel target = channel;
+                final ByteBuffer batch = pending;
+                final long batchEnd = appended;
+                pending = writing;
+                writing = batch;
+                lock.unlock();
+                IOException error = null;
+                try {
+                    ((Buffer) batch).flip();
+                    while (batch.hasRemaining()) {
+                        target.write(batch);
+                    }
+                    target.force(false);
+                } catch (IOException e) {
+                    error = e;
+                } finally {
+                    lock.lock();
+                }
+                ((Buffer) batch).clear();
+                flushing = false;
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durable = batchEnd;
+                }
+                flushed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static ByteBuffer ensureCapacity(final ByteBuffer buffer, final int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        final ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        ((Buffer) buffer).flip();
+        return grown.put(buffer);
+    }
+
+    private static Path logFile(final Path directory, final long generation) {
+        return directory.resolve("petstore-" + generation + ".log");
+    }
+
+    private static TreeMap<Long, Path> list(final Path directory, final Pattern pattern) throws IOException {
+        final TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (final Path entry : entries) {
+                final Matcher matcher = pattern.matcher(entry.getFileName().toString());
+                if (matcher.matches()) {
+                    files.put(Long.parseLong(matcher.group(1)), entry);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static void read(final Path file, final long length, final Consumer<Record> consumer)
+            throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            long position = 0;
+            while (position < length) {
+                final int recordLength = in.readInt();
+                in.readInt();
+                final byte[] body = new byte[recordLength];
+                in.readFully(body);
+                position += HEADER_BYTES + recordLength;
+                consumer.accept(new Record(ByteBuffer.wrap(body), false));
+            }
+        }
+    }
+
+    /**
+     * Length of the longest prefix of the file made of complete records with matching checksums.
+     */
+    private static long validLength(final Path file) throws IOException {
+        final long size = Files.size(file);
+        long valid = 0;
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            while (true) {
+                final int length = in.readInt();
+                final int checksum = in.readInt();
+                // a torn or corrupt length is not trusted with an allocation larger than the rest of the file
+                if (length < 1 + Long.BYTES || length > size - valid - HEADER_BYTES) {
+                    break;
+                }
+                final byte[] body = new byte[length];
+                in.readFully(body);
+                final CRC32 crc = new CRC32();
+                crc.update(body, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                valid += HEADER_BYTES + length;
+            }
+        } catch (EOFException e) {
+            // torn or missing tail
+        }
+        return valid;
+    }
+
+    /**
+     * What replay found for one store.
+     */
+    static final class Replay<K> {
+        private final Map<K, Record> latest = new HashMap<>();
+        private long version;
+
+        /**
+         * The newest record per key.
+         */
+        Collection<Record> getRecords() {
+            return latest.values();
+        }
+
+        /**
+         * The highest version the store had handed out, deleted entities included.
+         */
+        long getVersion() {
+            return version;
+        }
+    }
+
+    /**
+     * One logged mutation, or one entity of a snapshot.
+     */
+    static final class Record {
+        private final byte type;
+        private final long version;
+        private final ByteBuffer body;
+        private final boolean binary;
+        private Object payload;
+
+        /**
+         * @param body   type, version and payload
+         * @param binary whether the payload uses the {@link SnapshotFile} encoding rather than JSON
+         */
+        Record(final ByteBuffer body, final boolean binary) {
+            this.type = body.get(0);
+            this.version = body.getLong(1);
+            this.body = body;
+            this.binary = binary;
+        }
+
+        byte getType() {
+            return type;
+        }
+
+        long getVersion() {
+            return version;
+        }
+
+        /**
+         * Decodes the payload, once; replay reads it for the key and again to restore the entity.
+         */
+        <T> T getPayload(final Class<T> payloadType) {
+            if (payload == null) {
+                payload = decode(payloadType);
+            }
+            return payloadType.cast(payload);
+        }
+
+        private Object decode(final Class<?> payloadType) {
+            final ByteBuffer encoded = body.duplicate();
+            ((Buffer) encoded).position(1 + Long.BYTES);
+            if (binary) {
+                return SnapshotFile.decode(type, encoded);
+            }
+            try {
+                return Json.mapper().readValue(body.array(), body.arrayOffset() + 1 + Long.BYTES,
+                        encoded.remaining(), payloadType);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static final class Holder {
+        private static final MutationLog INSTANCE = open(Repositories.logDirectory());
+
+        private static MutationLog open(final String directory) {
+            if (directory == null || directory.isEmpty()) {
+                return DISABLED;
+            }
+            try {
+                final MutationLog log = MutationLog.open(Paths.get(directory));
+                Snapshotter.start(log);
+                return log;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.swagger.petstore.data;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Append-only store of variable length records in direct memory. A record is addressed by a reference that
+ * packs its chunk and offset; records are never moved or overwritten, so a reference stays readable for as long
+ * as the arena is reachable. Appends must come from one thread at a time; reads may come from any thread once
+ * the reference has been safely published.
+ */
+final class OffHeapArena {
+    static final long NULL = -1;
+
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private ByteBuffer current;
+    private long allocated;
+
+    /**
+     * Copies the remaining bytes of the record into the arena and returns its reference.
+     */
+    long append(final ByteBuffer record) {
+        final int length = record.remaining();
+        if (current == null || current.remaining() < Integer.BYTES + length) {
+            current = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, Integer.BYTES + length));
+            allocated += current.capacity();
+            final ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[grown.length - 1] = current;
+            chunks = grown;
+        }
+        final long ref = ((long) (chunks.length - 1) << 32) | current.position();
+        current.putInt(length);
+        current.put(record);
+        return ref;
+    }
+
+    /**
+     * A read-only view of the record, positioned at its first byte and limited to its length.
+     */
+    ByteBuffer read(final long ref) {
+        final ByteBuffer view = chunks[(int) (ref >>> 32)].asReadOnlyBuffer();
+        final int offset = (int) ref;
+        // through Buffer, so the class also links on Java 8 when built with a newer compiler
+        ((Buffer) view).limit(offset + Integer.BYTES + view.getInt(offset));
+        ((Buffer) view).position(offset + Integer.BYTES);
+        return view;
+    }
+
+    /**
+     * Direct memory reserved by this arena, in bytes.
+     */
+    long allocated() {
+        return allocated;
+    }
+}
@@ -0,0 +1,366 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.swagger.petstore.data;
+
+import io.swagger.petstore.model.Category;
+import io.swagger.petstore.model.Pet;
+import io.swagger.petstore.model.Tag;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Keeps pets in direct memory, column by column, so a large catalog costs the garbage collector little more
+ * than the index tries and one small handle per pet. Rows are append-only: a write adds a row and the old row
+ * stays readable for readers still holding an older catalog. Once most rows are dead the live ones are copied
+ * into fresh columns and the old ones are left to be freed with their last reader.
+ * <p>
+ * Statuses, categories and tag names repeat across pets and are dictionary coded; names and photo URLs are
+ * written to an {@link OffHeapArena}. Writers are serialized by a lock, readers never take it.
+ */
+final class OffHeapPetStore implements PetStore {
+    private static final int ROWS_PER_CHUNK = 4096;
+    private static final int MIN_COMPACTION_ROWS = 16 * ROWS_PER_CHUNK;
+
+    // one chunk holds each column for ROWS_PER_CHUNK rows back to back
+    private static final int ID_COLUMN = 0;
+    private static final int VERSION_COLUMN = ID_COLUMN + Long.BYTES * ROWS_PER_CHUNK;
+    private static final int NAME_COLUMN = VERSION_COLUMN + Long.BYTES * ROWS_PER_CHUNK;
+    private static final int URLS_COLUMN = NAME_COLUMN + Long.BYTES * ROWS_PER_CHUNK;
+    private static final int TAGS_COLUMN = URLS_COLUMN + Long.BYTES * ROWS_PER_CHUNK;
+    private static final int STATUS_COLUMN = TAGS_COLUMN + Long.BYTES * ROWS_PER_CHUNK;
+    private static final int CATEGORY_COLUMN = STATUS_COLUMN + Integer.BYTES * ROWS_PER_CHUNK;
+    private static final int CHUNK_SIZE = CATEGORY_COLUMN + Integer.BYTES * ROWS_PER_CHUNK;
+
+    private static final int NO_CODE = -1;
+    private static final int NULL_TAG = -2;
+    private static final int NULL_LIST = -1;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Dictionary<String> statuses = new Dictionary<>();
+    private final Dictionary<List<Object>> categories = new Dictionary<>();
+    private final Dictionary<String> tagNames = new Dictionary<>();
+
+    private volatile PetCatalog catalog = PetCatalog.empty();
+    private Columns columns = new Columns();
+    private ByteBuffer scratch = ByteBuffer.allocate(1024);
+
+    @Override
+    public PetCatalog catalog() {
+        return catalog;
+    }
+
+    /**
+     * Appends a row; only call this from within {@link #update(UnaryOperator)}.
+     */
+    @Override
+    public StoredPet store(final Pet pet, final long version) {
+        return columns.append(pet, version);
+    }
+
+    @Override
+    public PetCatalog update(final UnaryOperator<PetCatalog> mutation) {
+        writeLock.lock();
+        try {
+            final PetCatalog current = catalog;
+            PetCatalog next = mutation.apply(current);
+            if (next != current) {
+                if (columns.rows >= MIN_COMPACTION_ROWS && columns.rows > 2L * next.size()) {
+                    next = compact(next);
+                }
+                catalog = next;
+            }
+            return next;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Direct memory reserved for the current columns and their arena, in bytes.
+     */
+    long allocated() {
+        writeLock.lock();
+        try {
+            return (long) columns.chunks.size() * CHUNK_SIZE + columns.arena.allocated();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private PetCatalog compact(final PetCatalog live) {
+        columns = new Columns();
+        final List<StoredPet> copies = new ArrayList<>(live.size());
+        for (final StoredPet entry : live.pets()) {
+            copies.add(columns.append(entry.toPet(), entry.getVersion()));
+        }
+        return PetCatalog.of(live.version(), copies);
+    }
+
+    private ByteBuffer scratch(final int bytes) {
+        if (scratch.capacity() < bytes) {
+            scratch = ByteBuffer.allocate(Math.max(bytes, scratch.capacity() * 2));
+        }
+        ((Buffer) scratch).clear();
+        return scratch;
+    }
+
+    private static byte[] utf8(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String readUtf8(final ByteBuffer buffer, final int length) {
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * One generation of rows and the arena their names, photo URLs and tags live in.
+     */
+    private final class Columns {
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private final OffHeapArena arena = new OffHeapArena();
+        private int rows;
+
+        private OffHeapPet append(final Pet pet, final long version) {
+            final int row = rows % ROWS_PER_CHUNK;
+            if (row == 0) {
+                chunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE));
+            }
+            final ByteBuffer chunk = chunks.get(chunks.size() - 1);
+            rows++;
+
+            chunk.putLong(ID_COLUMN + Long.BYTES * row, pet.getId());
+            chunk.putLong(VERSION_COLUMN + Long.BYTES * row, version);
+            chunk.putLong(NAME_COLUMN + Long.BYTES * row, putName(pet.getName()));
+            chunk.putLong(URLS_COLUMN + Long.BYTES * row, putUrls(pet.getPhotoUrls()));
+            chunk.putLong(TAGS_COLUMN + Long.BYTES * row, putTags(pet.getTags()));
+            chunk.putInt(STATUS_COLUMN + Integer.BYTES * row, statuses.encode(pet.getStatus()));
+            final Category category = pet.getCategory();
+            chunk.putInt(CATEGORY_COLUMN + Integer.BYTES * row, categories.encode(category == null
+                    ? null : Arrays.asList(category.getId(), category.getName())));
+            return new OffHeapPet(arena, chunk, row);
+        }
+
+        private long putName(final String name) {
+            if (name == null) {
+                return OffHeapArena.NULL;
+            }
+            final byte[] bytes = utf8(name);
+            final ByteBuffer record = scratch(bytes.length);
+            record.put(bytes);
+            ((Buffer) record).flip();
+            return arena.append(record);
+        }
+
+        private long putUrls(final List<String> urls) {
+            if (urls == null) {
+                return OffHeapArena.NULL;
+            }
+            final List<byte[]> encoded = new ArrayList<>(urls.size());
+            int size = Integer.BYTES;
+            for (final String url : urls) {
+                final byte[] bytes = url == null ? null : utf8(url);
+                encoded.add(bytes);
+                size += Integer.BYTES + (bytes == null ? 0 : bytes.length);
+            }
+            final ByteBuffer record = scratch(size);
+            record.putInt(encoded.size());
+            for (final byte[] bytes : encoded) {
+                if (bytes == null) {
+                    record.putInt(NULL_LIST);
+                } else {
+                    record.putInt(bytes.length).put(bytes);
+                }
+            }
+            ((Buffer) record).flip();
+            return arena.append(record);
+        }
+
+        private long putTags(final List<Tag> tags) {
+            if (tags == null) {
+                return OffHeapArena.NULL;
+            }
+            final ByteBuffer record = scratch(Integer.BYTES + tags.size() * (Long.BYTES + Integer.BYTES));
+            record.putInt(tags.size());
+            for (final Tag tag : tags) {
+                if (tag == null) {
+                    record.putLong(0).putInt(NULL_TAG);
+                } else {
+                    record.putLong(tag.getId()).putInt(tagNames.encode(tag.getName()));
+                }
+            }
+            ((Buffer) record).flip();
+            return arena.append(record);
+        }
+    }
+
+    /**
+     * Handle on one row. Each call decodes from direct memory; nothing but the row address is kept on heap.
+     */
+    private final class OffHeapPet implements StoredPet {
+        private final OffHeapArena arena;
+        private final ByteBuffer chunk;
+        private final int row;
+
+        private OffHeapPet(final OffHeapArena arena, final ByteBuffer chunk, final int row) {
+            this.arena = arena;
+            this.chunk = chunk;
+            this.row = row;
+        }
+
+        @Override
+        public long getId() {
+            return chunk.getLong(ID_COLUMN + Long.BYTES * row);
+        }
+
+        @Override
+        public long getVersion() {
+            return chunk.getLong(VERSION_COLUMN + Long.BYTES * row);
+        }
+
+        @Override
+        public String getStatus() {
+            return statuses.decode(chunk.getInt(STATUS_COLUMN + Integer.BYTES * row));
+        }
+
+        @Override
+        public List<String> getTagNames() {
+            final List<String> names = new ArrayList<>();
+            final long ref = chunk.getLong(TAGS_COLUMN + Long.BYTES * row);
+            if (ref != OffHeapArena.NULL) {
+                final ByteBuffer record = arena.read(ref);
+                for (int i = record.getInt(); i > 0; i--) {
+                    record.getLong();
+                    final int code = record.getInt();
+                    if (code >= 0) {
+                        names.add(tagNames.decode(code));
+                    }
+                }
+            }
+            return names;
+        }
+
+        @Override
+        public Pet toPet() {
+            final Pet pet = new Pet();
+            pet.setId(getId());
+            pet.setName(getName());
+            pet.setCategory(getCategory());
+            pet.setPhotoUrls(getPhotoUrls());
+            pet.setTags(getTags());
+            pet.setStatus(getStatus());
+            return pet;
+        }
+
+        private String getName() {
+            final long ref = chunk.getLong(NAME_COLUMN + Long.BYTES * row);
+            if (ref == OffHeapArena.NULL) {
+                return null;
+            }
+            final ByteBuffer record = arena.read(ref);
+            return readUtf8(record, record.remaining());
+        }
+
+        private Category getCategory() {
+            final List<Object> key = categories.decode(chunk.getInt(CATEGORY_COLUMN + Integer.BYTES * row));
+            if (key == null) {
+                return null;
+            }
+            final Category category = new Category();
+            category.setId((Long) key.get(0));
+            category.setName((String) key.get(1));
+            return category;
+        }
+
+        private List<String> getPhotoUrls() {
+            final long ref = chunk.getLong(URLS_COLUMN + Long.BYTES * row);
+            if (ref == OffHeapArena.NULL) {
+                return null;
+            }
+            final ByteBuffer record = arena.read(ref);
+            final int count = record.getInt();
+            final List<String> urls = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final int length = record.getInt();
+                urls.add(length == NULL_LIST ? null : readUtf8(record, length));
+            }
+            return urls;
+        }
+
+        private List<Tag> getTags() {
+            final long ref = chunk.getLong(TAGS_COLUMN + Long.BYTES * row);
+            if (ref == OffHeapArena.NULL) {
+                return null;
+            }
+            final ByteBuffer record = arena.read(ref);
+            final int count = record.getInt();
+            final List<Tag> tags = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final long id = record.getLong();
+                final int code = record.getInt();
+                if (code == NULL_TAG) {
+                    tags.add(null);
+                } else {
+                    final Tag tag = new Tag();
+                    tag.setId(id);
+                    tag.setName(tagNames.decode(code));
+                    tags.add(tag);
+                }
+            }
+            return tags;
+        }
+    }
+
+    /**
+     * Assigns dense codes to values. Codes are only added, under the write lock, and are published to readers
+     * together with the catalog that first uses them.
+     */
+    private static final class Dictionary<T> {
+        private final Map<T, Integer> codes = new HashMap<>();
+        private volatile Object[] values = new Object[16];
+
+        private int encode(final T value) {
+            if (value == null) {
+                return NO_CODE;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = codes.size();
+                if (code == values.length) {
+                    values = Arrays.copyOf(values, code * 2);
+                }
+                values[code] = value;
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        @SuppressWarnings("unchecked")
+        private T decode(final int code) {
+            return code < 0 ? null : (T) values[code];
+        }
+    }
+}
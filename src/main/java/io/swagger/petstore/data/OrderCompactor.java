@@ -0,0 +1,65 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.swagger.petstore.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compacts order segments in the background every {@value #INTERVAL_PROPERTY} seconds (default
+ * {@value #DEFAULT_INTERVAL}, 0 disables) once they ended at least {@value #AGE_PROPERTY} hours ago (default
+ * {@value #DEFAULT_AGE}) and hold only complete orders. Compaction only changes how {@link OrderData} keeps the
+ * orders in memory, so nothing is logged.
+ */
+final class OrderCompactor {
+    static final String INTERVAL_PROPERTY = "petstore.orders.compaction.interval";
+    static final long DEFAULT_INTERVAL = 300;
+    static final String AGE_PROPERTY = "petstore.orders.compaction.age";
+    static final long DEFAULT_AGE = 168;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderCompactor.class);
+
+    private OrderCompactor() {
+    }
+
+    static void start() {
+        final long interval = Long.getLong(INTERVAL_PROPERTY, DEFAULT_INTERVAL);
+        if (interval <= 0) {
+            return;
+        }
+        final long age = TimeUnit.HOURS.toMillis(Long.getLong(AGE_PROPERTY, DEFAULT_AGE));
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            final Thread thread = new Thread(task, "petstore-order-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                final int compacted = OrderData.compact(System.currentTimeMillis() - age);
+                if (compacted > 0) {
+                    LOGGER.info("Compacted {} order segments", compacted);
+                }
+            } catch (RuntimeException e) {
+                // the segments stay hot; try again next time
+                LOGGER.error("Order compaction failed", e);
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+}
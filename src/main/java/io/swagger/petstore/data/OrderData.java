@@ -18,51 +18,207 @@ package io.swagger.petstore.data;
 
 import io.swagger.petstore.model.Order;
 
-import java.util.*;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
-public class OrderData {
-    private static List<Order> orders = new ArrayList<>();
+public class OrderData implements OrderRepository {
+    static final String SEGMENT_PROPERTY = "petstore.orders.segment";
+    static final long DEFAULT_SEGMENT = 24;
+
+    // the newest table; writers install a new one with compareAndSet, since the compactor does too. Readers take
+    // the newest one that is logged from the view, without locking
+    private static AtomicReference<OrderTable> orders = new AtomicReference<>(
+            OrderTable.empty(TimeUnit.HOURS.toMillis(Long.getLong(SEGMENT_PROPERTY, DEFAULT_SEGMENT))));
+    private static AtomicLong versions = new AtomicLong(Versioned.startingVersion());
+    private static MutationLog log = MutationLog.get();
+    private static DurableView<OrderTable> view = new DurableView<>(log, orders.get());
+    private static ChangeFeed feed = ChangeFeed.get();
 
     static {
-        orders.add(createOrder(1, 1, 100, new Date(), "placed", true));
-        orders.add(createOrder(2, 1, 50, new Date(), "approved", true));
-        orders.add(createOrder(3, 1, 50, new Date(), "delivered", true));
+        if (log.isEmpty()) {
+            seed();
+        } else {
+            restore();
+        }
+        OrderCompactor.start();
     }
 
-    public Order getOrderById(final long orderId) {
-        for (final Order order : orders) {
-            if (order.getId() == orderId) {
-                return order;
-            }
+    private static void seed() {
+        for (final Order order : SampleData.orders()) {
+            storeOrder(order);
         }
-        return null;
     }
 
+    @Override
+    public Order getOrderById(final long orderId) {
+        final Versioned<Order> order = view.get().get(orderId);
+        return order == null ? null : order.getValue();
+    }
+
+    @Override
+    public Versioned<Order> getVersionedOrderById(final long orderId) {
+        return view.get().get(orderId);
+    }
+
+    @Override
     public Map<String, Integer> getCountByStatus() {
+        return view.get().inventory().snapshot();
+    }
+
+    /**
+     * Lazily walks every order in id order. The walk reads one version of the table, so it is a consistent
+     * point-in-time view no matter how long the caller takes to consume it.
+     */
+    @Override
+    public Iterator<Order> iterateOrders() {
+        return values(view.get().iterator());
+    }
 
-        final Map<String, Integer> countByStatus = new HashMap<>();
+    /**
+     * Lazily walks the orders shipping in the range by shipDate, reading only the segments that overlap it.
+     */
+    @Override
+    public Iterator<Order> iterateOrdersByShipDate(final Date from, final Date to) {
+        return values(view.get().range(from.getTime(), to.getTime()));
+    }
+
+    private static Iterator<Order> values(final Iterator<Versioned<Order>> current) {
+        return new Iterator<Order>() {
+            @Override
+            public boolean hasNext() {
+                return current.hasNext();
+            }
 
-        for (final Order order : orders) {
-            final String status = order.getStatus();
-            if (countByStatus.containsKey(status)) {
-                countByStatus.put(status, countByStatus.get(status) + order.getQuantity());
-            } else {
-                countByStatus.put(status, order.getQuantity());
+            @Override
+            public Order next() {
+                return current.next().getValue();
             }
+        };
+    }
+
+    @Override
+    public Versioned<Order> addOrder(final Order order) {
+        return storeOrder(order);
+    }
+
+    @Override
+    public void deleteOrderById(final Long orderId) {
+        removeOrder(orderId, null);
+    }
+
+    /**
+     * Deletes the order only if it is still at the expected version.
+     *
+     * @return false if the order is gone or was changed in the meantime
+     */
+    @Override
+    public boolean deleteOrderById(final long orderId, final long expectedVersion) {
+        return removeOrder(orderId, expectedVersion);
+    }
+
+    private static boolean removeOrder(final long orderId, final Long expectedVersion) {
+        // the version of the delete, or 0 if there was nothing to delete
+        final long[] deletedAt = new long[1];
+        view.write(() -> {
+            OrderTable current;
+            OrderTable next;
+            do {
+                current = orders.get();
+                final Versioned<Order> existing = current.get(orderId);
+                if (existing == null || expectedVersion != null && existing.getVersion() != expectedVersion) {
+                    deletedAt[0] = 0;
+                    return current;
+                }
+                deletedAt[0] = versions.incrementAndGet();
+                next = current.remove(orderId);
+            } while (!orders.compareAndSet(current, next));
+            return next;
+        }, table -> deletedAt[0] == 0 ? log.queued() : log.queue(MutationLog.ORDER_DELETE, deletedAt[0], orderId));
+        if (deletedAt[0] == 0) {
+            return false;
         }
+        feed.publish(ChangeFeed.ORDER, ChangeFeed.DELETE, orderId, deletedAt[0]);
+        return true;
+    }
+
+    private static Versioned<Order> storeOrder(final Order order) {
+        final OrderTable installed = view.write(() -> {
+            OrderTable current;
+            OrderTable next;
+            do {
+                current = orders.get();
+                next = current.put(new Versioned<>(order, versions.incrementAndGet()));
+            } while (!orders.compareAndSet(current, next));
+            return next;
+        }, table -> log.queue(MutationLog.ORDER_PUT, table.get(order.getId()).getVersion(), order));
+        final Versioned<Order> stored = installed.get(order.getId());
+        feed.publish(ChangeFeed.ORDER, ChangeFeed.PUT, order.getId(), stored.getVersion());
+        return stored;
+    }
 
-        return countByStatus;
+    /**
+     * Loads the orders recorded in the snapshot and mutation log, with the versions they were written at.
+     */
+    private static void restore() {
+        final MutationLog.Replay<Long> replay = log.replay(MutationLog.ORDER_PUT, MutationLog.ORDER_DELETE,
+                record -> record.getType() == MutationLog.ORDER_PUT
+                        ? record.getPayload(Order.class).getId() : record.getPayload(Long.class));
+        versions.set(Math.max(replay.getVersion(), versions.get()));
+        view.write(() -> {
+            OrderTable restored = orders.get();
+            for (final MutationLog.Record record : replay.getRecords()) {
+                if (record.getType() == MutationLog.ORDER_PUT) {
+                    final Order order = record.getPayload(Order.class);
+                    restored = restored.put(new Versioned<>(order, record.getVersion()));
+                }
+            }
+            orders.set(restored);
+            return restored;
+        }, table -> log.queued());
     }
 
-    public void addOrder(final Order order) {
-        if (orders.size() > 0) {
-            orders.removeIf(orderN -> orderN.getId() == order.getId());
+    /**
+     * Writes the orders of the newest version of the table, and the version sequence.
+     */
+    static void snapshot(final SnapshotFile.Writer writer) throws IOException {
+        // the table may already hold writes made after the log was rotated, but their log records come later
+        // on replay and carry the same versions
+        final Iterator<Versioned<Order>> current = orders.get().iterator();
+        writer.writeSequence(MutationLog.ORDER_PUT, versions.get());
+        while (current.hasNext()) {
+            final Versioned<Order> order = current.next();
+            writer.write(MutationLog.ORDER_PUT, order.getVersion(), order.getValue());
         }
-        orders.add(order);
     }
 
-    public void deleteOrderById(final Long orderId) {
-        orders.removeIf(order -> order.getId() == orderId);
+    /**
+     * Compacts, one at a time, every segment that ended at or before the given time and holds only complete
+     * orders. Writers are not blocked; a segment a writer changes in the meantime is looked at again. Readers are
+     * given the compacted table once everything it holds is logged.
+     *
+     * @return the number of segments compacted
+     */
+    static int compact(final long endedBy) {
+        int compacted = 0;
+        long after = Long.MIN_VALUE;
+        OrderTable current = orders.get();
+        for (Long key = current.compactable(after, endedBy); key != null; key = current.compactable(after, endedBy)) {
+            final OrderTable next = current.compact(key);
+            if (next == current || orders.compareAndSet(current, next)) {
+                compacted += next == current ? 0 : 1;
+                after = key;
+            }
+            current = orders.get();
+        }
+        if (compacted > 0) {
+            view.write(orders::get, table -> log.queued());
+        }
+        return compacted;
     }
 
     public static Order createOrder(final long id, final long petId, final int quantity, final Date shipDate,
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.data;
+
+import io.swagger.petstore.model.Order;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Storage for orders, versioned like {@link PetRepository}. {@link Repositories} picks the implementation.
+ */
+public interface OrderRepository {
+    Order getOrderById(long orderId);
+
+    Versioned<Order> getVersionedOrderById(long orderId);
+
+    /**
+     * Total quantity ordered per order status.
+     */
+    Map<String, Integer> getCountByStatus();
+
+    /**
+     * Lazily walks every order as of the call, however long the caller takes to consume it.
+     */
+    Iterator<Order> iterateOrders();
+
+    /**
+     * Lazily walks the orders with a shipDate from the first date (inclusive) to the second (exclusive), by
+     * shipDate and then id, as of the call.
+     */
+    Iterator<Order> iterateOrdersByShipDate(Date from, Date to);
+
+    Versioned<Order> addOrder(Order order);
+
+    void deleteOrderById(Long orderId);
+
+    /**
+     * Deletes the order only if it is still at the expected version.
+     *
+     * @return false if the order is gone or was changed in the meantime
+     */
+    boolean deleteOrderById(long orderId, long expectedVersion);
+}
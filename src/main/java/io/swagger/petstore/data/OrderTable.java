@@ -0,0 +1,430 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.data;
+
+import io.swagger.petstore.model.Order;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * One immutable version of the orders, partitioned into segments of fixed width by shipDate. Recent segments
+ * are hot: their orders are kept as stored, indexed by id. A segment that holds only complete orders can be
+ * compacted into a dense column layout sorted by shipDate, which takes a fraction of the memory and is turned
+ * back into a hot segment only when one of its orders is written again. The id index points straight at hot
+ * orders and at the compacted segment for the others, so lookups by id never scan segments. The inventory
+ * counters of the orders are part of the version too.
+ */
+final class OrderTable {
+    // segment key of the orders without a shipDate; never compacted and never part of a range
+    private static final long UNDATED = Long.MIN_VALUE;
+
+    // ordering of the orders in a range, and of the rows of a compacted segment
+    private static final Comparator<Versioned<Order>> BY_SHIP_DATE = Comparator
+            .comparingLong((Versioned<Order> order) -> order.getValue().getShipDate().getTime())
+            .thenComparingLong(order -> order.getValue().getId());
+
+    private final long segmentMillis;
+    private final LongTrieMap<Object> byId;
+    private final LongTrieMap<Segment> segments;
+    private final InventoryCounters inventory;
+
+    private OrderTable(final long segmentMillis, final LongTrieMap<Object> byId,
+                       final LongTrieMap<Segment> segments, final InventoryCounters inventory) {
+        this.segmentMillis = segmentMillis;
+        this.byId = byId;
+        this.segments = segments;
+        this.inventory = inventory;
+    }
+
+    static OrderTable empty(final long segmentMillis) {
+        return new OrderTable(segmentMillis, LongTrieMap.empty(), LongTrieMap.empty(), InventoryCounters.EMPTY);
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    InventoryCounters inventory() {
+        return inventory;
+    }
+
+    @SuppressWarnings("unchecked")
+    Versioned<Order> get(final long id) {
+        final Object entry = byId.get(id);
+        if (entry instanceof CompactSegment) {
+            return ((CompactSegment) entry).get(id);
+        }
+        return (Versioned<Order>) entry;
+    }
+
+    /**
+     * Stores the order, moving it to the segment of its shipDate if that changed.
+     */
+    OrderTable put(final Versioned<Order> stored) {
+        final long key = segmentOf(stored.getValue());
+        final OrderTable table = remove(stored.getValue().getId()).thawed(key);
+        final HotSegment segment = (HotSegment) table.segments.get(key);
+        return new OrderTable(segmentMillis, table.byId.plus(stored.getValue().getId(), stored),
+                table.segments.plus(key, HotSegment.plus(segment, key, stored)),
+                table.inventory.replace(null, stored.getValue()));
+    }
+
+    OrderTable remove(final long id) {
+        final Versioned<Order> existing = get(id);
+        if (existing == null) {
+            return this;
+        }
+        final long key = segmentOf(existing.getValue());
+        final OrderTable table = thawed(key);
+        final HotSegment rest = ((HotSegment) table.segments.get(key)).minus(id);
+        return new OrderTable(segmentMillis, table.byId.minus(id),
+                rest == null ? table.segments.minus(key) : table.segments.plus(key, rest),
+                table.inventory.replace(existing.getValue(), null));
+    }
+
+    /**
+     * Every order in id order.
+     */
+    Iterator<Versioned<Order>> iterator() {
+        final Iterator<Object> entries = byId.iterator();
+        return new Iterator<Versioned<Order>>() {
+            // the id of the next entry is only known to the compacted segment it points at
+            private Long lastId;
+
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public Versioned<Order> next() {
+                final Object entry = entries.next();
+                final Versioned<Order> order = entry instanceof CompactSegment
+                        ? ((CompactSegment) entry).next(lastId) : (Versioned<Order>) entry;
+                lastId = order.getValue().getId();
+                return order;
+            }
+        };
+    }
+
+    /**
+     * The orders with a shipDate from the first time (inclusive) to the second (exclusive), by shipDate and then
+     * id. Only the segments overlapping the range are read, one at a time as the iteration reaches them.
+     */
+    Iterator<Versioned<Order>> range(final long from, final long to) {
+        if (from >= to) {
+            return Collections.emptyIterator();
+        }
+        final Iterator<Segment> overlapping = segments.valuesFrom(Math.max(segmentStart(from), UNDATED + 1));
+        return new Iterator<Versioned<Order>>() {
+            private Iterator<Versioned<Order>> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && overlapping.hasNext()) {
+                    final Segment segment = overlapping.next();
+                    if (segment.start() >= to) {
+                        break;
+                    }
+                    current = segment.range(from, to).iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public Versioned<Order> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    /**
+     * The start of the oldest hot segment after the given start that ends at or before the given time and holds
+     * only complete orders, or null if there is none.
+     */
+    Long compactable(final long after, final long endedBy) {
+        final Iterator<Segment> dated = segments.valuesFrom(Math.max(after, UNDATED) + 1);
+        while (dated.hasNext()) {
+            final Segment segment = dated.next();
+            if (segment.start() > endedBy - segmentMillis) {
+                return null;
+            }
+            if (segment instanceof HotSegment && ((HotSegment) segment).incomplete == 0) {
+                return segment.start();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compacts the hot segment starting at the given time, which must hold only complete orders. Returns this
+     * table if the segment has too many distinct statuses to compact.
+     */
+    OrderTable compact(final long key) {
+        final CompactSegment compacted = CompactSegment.of((HotSegment) segments.get(key));
+        if (compacted == null) {
+            return this;
+        }
+        final Object[] entries = new Object[compacted.size()];
+        Arrays.fill(entries, compacted);
+        return new OrderTable(segmentMillis, byId.plusAll(compacted.idsInOrder(), entries, entries.length),
+                segments.plus(key, compacted), inventory);
+    }
+
+    /**
+     * This table with the segment at the given key hot again, if it was compacted.
+     */
+    private OrderTable thawed(final long key) {
+        final Segment segment = segments.get(key);
+        if (!(segment instanceof CompactSegment)) {
+            return this;
+        }
+        final HotSegment hot = ((CompactSegment) segment).thaw();
+        final long[] ids = new long[hot.orders.size()];
+        final Object[] entries = new Object[ids.length];
+        int i = 0;
+        for (final Versioned<Order> order : hot.orders) {
+            ids[i] = order.getValue().getId();
+            entries[i++] = order;
+        }
+        return new OrderTable(segmentMillis, byId.plusAll(ids, entries, ids.length), segments.plus(key, hot),
+                inventory);
+    }
+
+    private long segmentOf(final Order order) {
+        return order.getShipDate() == null ? UNDATED : segmentStart(order.getShipDate().getTime());
+    }
+
+    private long segmentStart(final long time) {
+        return Math.floorDiv(time, segmentMillis) * segmentMillis;
+    }
+
+    private interface Segment {
+        long start();
+
+        /**
+         * The orders of this segment in the range, by shipDate and then id.
+         */
+        List<Versioned<Order>> range(long from, long to);
+    }
+
+    private static final class HotSegment implements Segment {
+        private final long start;
+        private final LongTrieMap<Versioned<Order>> orders;
+        private final int incomplete;
+
+        private HotSegment(final long start, final LongTrieMap<Versioned<Order>> orders, final int incomplete) {
+            this.start = start;
+            this.orders = orders;
+            this.incomplete = incomplete;
+        }
+
+        private static HotSegment plus(final HotSegment segment, final long start, final Versioned<Order> stored) {
+            final LongTrieMap<Versioned<Order>> orders = segment == null ? LongTrieMap.empty() : segment.orders;
+            final int incomplete = segment == null ? 0 : segment.incomplete;
+            return new HotSegment(start, orders.plus(stored.getValue().getId(), stored),
+                    stored.getValue().isComplete() ? incomplete : incomplete + 1);
+        }
+
+        /**
+         * Returns null once the segment is empty.
+         */
+        private HotSegment minus(final long id) {
+            final Versioned<Order> existing = orders.get(id);
+            if (orders.size() == 1) {
+                return null;
+            }
+            return new HotSegment(start, orders.minus(id),
+                    existing.getValue().isComplete() ? incomplete : incomplete - 1);
+        }
+
+        @Override
+        public long start() {
+            return start;
+        }
+
+        @Override
+        public List<Versioned<Order>> range(final long from, final long to) {
+            final List<Versioned<Order>> matches = new ArrayList<>();
+            for (final Versioned<Order> order : orders) {
+                final long shipDate = order.getValue().getShipDate().getTime();
+                if (shipDate >= from && shipDate < to) {
+                    matches.add(order);
+                }
+            }
+            matches.sort(BY_SHIP_DATE);
+            return matches;
+        }
+    }
+
+    /**
+     * Complete orders in parallel columns sorted by shipDate and id, with statuses coded against a per-segment
+     * dictionary. Orders are rebuilt from the columns when read.
+     */
+    private static final class CompactSegment implements Segment {
+        private final long start;
+        private final long[] ids;
+        private final long[] versions;
+        private final long[] petIds;
+        private final int[] quantities;
+        private final long[] shipDates;
+        private final byte[] statuses;
+        private final String[] statusNames;
+        // row numbers in id order
+        private final int[] rowsById;
+
+        private CompactSegment(final long start, final int size, final int statusCount) {
+            this.start = start;
+            this.ids = new long[size];
+            this.versions = new long[size];
+            this.petIds = new long[size];
+            this.quantities = new int[size];
+            this.shipDates = new long[size];
+            this.statuses = new byte[size];
+            this.statusNames = new String[statusCount];
+            this.rowsById = new int[size];
+        }
+
+        /**
+         * Returns null if the segment uses too many distinct statuses to code them in a byte.
+         */
+        private static CompactSegment of(final HotSegment hot) {
+            final List<String> names = new ArrayList<>();
+            final List<Versioned<Order>> rows = new ArrayList<>(hot.orders.size());
+            for (final Versioned<Order> order : hot.orders) {
+                if (!names.contains(order.getValue().getStatus())) {
+                    names.add(order.getValue().getStatus());
+                }
+                rows.add(order);
+            }
+            if (names.size() > 1 << Byte.SIZE) {
+                return null;
+            }
+            rows.sort(BY_SHIP_DATE);
+
+            final CompactSegment segment = new CompactSegment(hot.start, rows.size(), names.size());
+            names.toArray(segment.statusNames);
+            final Integer[] rowsById = new Integer[rows.size()];
+            for (int row = 0; row < rows.size(); row++) {
+                final Order order = rows.get(row).getValue();
+                segment.ids[row] = order.getId();
+                segment.versions[row] = rows.get(row).getVersion();
+                segment.petIds[row] = order.getPetId();
+                segment.quantities[row] = order.getQuantity();
+                segment.shipDates[row] = order.getShipDate().getTime();
+                segment.statuses[row] = (byte) names.indexOf(order.getStatus());
+                rowsById[row] = row;
+            }
+            Arrays.sort(rowsById, Comparator.comparingLong(row -> segment.ids[row]));
+            for (int i = 0; i < rowsById.length; i++) {
+                segment.rowsById[i] = rowsById[i];
+            }
+            return segment;
+        }
+
+        private int size() {
+            return ids.length;
+        }
+
+        private long[] idsInOrder() {
+            final long[] sorted = new long[ids.length];
+            for (int i = 0; i < rowsById.length; i++) {
+                sorted[i] = ids[rowsById[i]];
+            }
+            return sorted;
+        }
+
+        private Versioned<Order> get(final long id) {
+            final int i = firstIdAtLeast(id);
+            return i < rowsById.length && ids[rowsById[i]] == id ? row(rowsById[i]) : null;
+        }
+
+        /**
+         * The order with the smallest id greater than the given one, or the smallest id at all if it is null.
+         */
+        private Versioned<Order> next(final Long id) {
+            final int i = id == null ? 0 : id == Long.MAX_VALUE ? rowsById.length : firstIdAtLeast(id + 1);
+            if (i == rowsById.length) {
+                throw new NoSuchElementException();
+            }
+            return row(rowsById[i]);
+        }
+
+        private int firstIdAtLeast(final long id) {
+            int low = 0;
+            int high = rowsById.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (ids[rowsById[mid]] < id) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private HotSegment thaw() {
+            final long[] sorted = idsInOrder();
+            final Object[] orders = new Object[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                orders[i] = row(rowsById[i]);
+            }
+            return new HotSegment(start, LongTrieMap.ofSorted(sorted, orders, sorted.length), 0);
+        }
+
+        @Override
+        public long start() {
+            return start;
+        }
+
+        @Override
+        public List<Versioned<Order>> range(final long from, final long to) {
+            int low = 0;
+            int high = shipDates.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (shipDates[mid] < from) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            final List<Versioned<Order>> matches = new ArrayList<>();
+            for (int row = low; row < shipDates.length && shipDates[row] < to; row++) {
+                matches.add(row(row));
+            }
+            return matches;
+        }
+
+        private Versioned<Order> row(final int row) {
+            return new Versioned<>(OrderData.createOrder(ids[row], petIds[row], quantities[row],
+                    new Date(shipDates[row]), statusNames[statuses[row] & 0xFF], true), versions[row]);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.data;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * One immutable version of the pet catalog: the pets keyed by id plus the status and tag indexes that
+ * were built from exactly those pets. Writers derive a new version from the current one, so a reader
+ * holding a catalog always sees the primary store and its indexes at the same point in time. Each pet
+ * carries the catalog version it was last written at.
+ */
+final class PetCatalog {
+    private static final PetCatalog EMPTY = new PetCatalog(0, LongTrieMap.empty(), StringTrieMap.empty(),
+            StringTrieMap.empty());
+
+    private final long version;
+    private final LongTrieMap<StoredPet> pets;
+    private final StringTrieMap<LongTrieMap<StoredPet>> petsByStatus;
+    private final StringTrieMap<LongTrieMap<StoredPet>> petsByTag;
+
+    private PetCatalog(final long version, final LongTrieMap<StoredPet> pets,
+                       final StringTrieMap<LongTrieMap<StoredPet>> petsByStatus,
+                       final StringTrieMap<LongTrieMap<StoredPet>> petsByTag) {
+        this.version = version;
+        this.pets = pets;
+        this.petsByStatus = petsByStatus;
+        this.petsByTag = petsByTag;
+    }
+
+    static PetCatalog empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Builds a catalog at the given version holding the given pets, which keep their own versions and must have
+     * distinct ids. The tries are built bottom-up from the pets sorted by id rather than one pet at a time.
+     */
+    static PetCatalog of(final long version, final Collection<StoredPet> entries) {
+        final StoredPet[] sorted = entries.toArray(new StoredPet[0]);
+        Arrays.sort(sorted, Comparator.comparingLong(StoredPet::getId));
+
+        final Map<String, Posting> byStatus = new HashMap<>();
+        final Map<String, Posting> byTag = new HashMap<>();
+        final long[] ids = new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            final StoredPet entry = sorted[i];
+            ids[i] = entry.getId();
+            if (entry.getStatus() != null) {
+                byStatus.computeIfAbsent(entry.getStatus(), c -> new Posting()).add(entry);
+            }
+            for (final String tag : entry.getTagNames()) {
+                byTag.computeIfAbsent(tag, c -> new Posting()).add(entry);
+            }
+        }
+        return new PetCatalog(version, LongTrieMap.ofSorted(ids, sorted, sorted.length), index(byStatus),
+                index(byTag));
+    }
+
+    long version() {
+        return version;
+    }
+
+    /**
+     * The version the next write to this catalog produces, and the version the written pet carries.
+     */
+    long nextVersion() {
+        return version + 1;
+    }
+
+    int size() {
+        return pets.size();
+    }
+
+    StoredPet get(final long id) {
+        return pets.get(id);
+    }
+
+    LongTrieMap<StoredPet> pets() {
+        return pets;
+    }
+
+    LongTrieMap<StoredPet> withStatus(final String status) {
+        return posting(petsByStatus, status);
+    }
+
+    LongTrieMap<StoredPet> withTag(final String tag) {
+        return posting(petsByTag, tag);
+    }
+
+    /**
+     * Stores a pet encoded for {@link #nextVersion()}.
+     */
+    PetCatalog put(final StoredPet entry) {
+        return with(entry, nextVersion());
+    }
+
+    /**
+     * Stores pets with distinct ids, all encoded for {@link #nextVersion()}, as one new version. The pets are
+     * merged into each index in one pass per index key instead of one path copy per pet.
+     */
+    PetCatalog putAll(final Collection<StoredPet> entries) {
+        final StoredPet[] sorted = entries.toArray(new StoredPet[0]);
+        Arrays.sort(sorted, Comparator.comparingLong(StoredPet::getId));
+
+        StringTrieMap<LongTrieMap<StoredPet>> byStatus = petsByStatus;
+        StringTrieMap<LongTrieMap<StoredPet>> byTag = petsByTag;
+        final Map<String, Posting> addedByStatus = new HashMap<>();
+        final Map<String, Posting> addedByTag = new HashMap<>();
+        final long[] ids = new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            final StoredPet entry = sorted[i];
+            ids[i] = entry.getId();
+            // memberships the pet keeps are overwritten by the merge below; only the ones it loses are removed
+            final StoredPet previous = pets.get(entry.getId());
+            if (previous != null) {
+                if (!Objects.equals(previous.getStatus(), entry.getStatus())) {
+                    byStatus = unindex(byStatus, previous.getStatus(), previous.getId());
+                }
+                for (final String tag : previous.getTagNames()) {
+                    if (!entry.getTagNames().contains(tag)) {
+                        byTag = unindex(byTag, tag, previous.getId());
+                    }
+                }
+            }
+            if (entry.getStatus() != null) {
+                addedByStatus.computeIfAbsent(entry.getStatus(), c -> new Posting()).add(entry);
+            }
+            for (final String tag : entry.getTagNames()) {
+                addedByTag.computeIfAbsent(tag, c -> new Posting()).add(entry);
+            }
+        }
+        return new PetCatalog(nextVersion(), pets.plusAll(ids, sorted, sorted.length),
+                merge(byStatus, addedByStatus), merge(byTag, addedByTag));
+    }
+
+    PetCatalog remove(final long id) {
+        final StoredPet previous = pets.get(id);
+        if (previous == null) {
+            return this;
+        }
+
+        final StringTrieMap<LongTrieMap<StoredPet>> byStatus = unindex(petsByStatus, previous.getStatus(), id);
+        StringTrieMap<LongTrieMap<StoredPet>> byTag = petsByTag;
+        for (final String tag : previous.getTagNames()) {
+            byTag = unindex(byTag, tag, id);
+        }
+        return new PetCatalog(nextVersion(), pets.minus(id), byStatus, byTag);
+    }
+
+    private PetCatalog with(final StoredPet entry, final long newVersion) {
+        final long id = entry.getId();
+        StringTrieMap<LongTrieMap<StoredPet>> byStatus = petsByStatus;
+        StringTrieMap<LongTrieMap<StoredPet>> byTag = petsByTag;
+
+        final StoredPet previous = pets.get(id);
+        if (previous != null) {
+            byStatus = unindex(byStatus, previous.getStatus(), id);
+            for (final String tag : previous.getTagNames()) {
+                byTag = unindex(byTag, tag, id);
+            }
+        }
+
+        byStatus = index(byStatus, entry.getStatus(), entry);
+        for (final String tag : entry.getTagNames()) {
+            byTag = index(byTag, tag, entry);
+        }
+        return new PetCatalog(newVersion, pets.plus(id, entry), byStatus, byTag);
+    }
+
+    private static LongTrieMap<StoredPet> posting(final StringTrieMap<LongTrieMap<StoredPet>> index,
+                                                  final String key) {
+        final LongTrieMap<StoredPet> posting = key == null ? null : index.get(key);
+        return posting == null ? LongTrieMap.empty() : posting;
+    }
+
+    private static StringTrieMap<LongTrieMap<StoredPet>> index(final StringTrieMap<LongTrieMap<StoredPet>> index,
+                                                              final String key, final StoredPet entry) {
+        if (key == null) {
+            return index;
+        }
+        final LongTrieMap<StoredPet> posting = index.get(key);
+        return index.plus(key, (posting == null ? LongTrieMap.<StoredPet>empty() : posting)
+                .plus(entry.getId(), entry));
+    }
+
+    /**
+     * The index without the pet under the key. A key whose last pet goes is dropped, so names no pet uses any
+     * more are not kept.
+     */
+    private static StringTrieMap<LongTrieMap<StoredPet>> unindex(final StringTrieMap<LongTrieMap<StoredPet>> index,
+                                                                final String key, final long id) {
+        final LongTrieMap<StoredPet> posting = key == null ? null : index.get(key);
+        if (posting == null) {
+            return index;
+        }
+        final LongTrieMap<StoredPet> remaining = posting.minus(id);
+        if (remaining == posting) {
+            return index;
+        }
+        return remaining.isEmpty() ? index.minus(key) : index.plus(key, remaining);
+    }
+
+    private static StringTrieMap<LongTrieMap<StoredPet>> index(final Map<String, Posting> postings) {
+        final Map<String, LongTrieMap<StoredPet>> maps = new HashMap<>();
+        for (final Map.Entry<String, Posting> entry : postings.entrySet()) {
+            maps.put(entry.getKey(), entry.getValue().toMap());
+        }
+        return StringTrieMap.<LongTrieMap<StoredPet>>empty().plusAll(maps);
+    }
+
+    private static StringTrieMap<LongTrieMap<StoredPet>> merge(final StringTrieMap<LongTrieMap<StoredPet>> index,
+                                                            final Map<String, Posting> added) {
+        StringTrieMap<LongTrieMap<StoredPet>> merged = index;
+        for (final Map.Entry<String, Posting> entry : added.entrySet()) {
+            final LongTrieMap<StoredPet> posting = index.get(entry.getKey());
+            merged = merged.plus(entry.getKey(), entry.getValue().addTo(posting == null
+                    ? LongTrieMap.<StoredPet>empty() : posting));
+        }
+        return merged;
+    }
+
+    /**
+     * Pets collected in ascending id order for one index key.
+     */
+    private static final class Posting {
+        private long[] ids = new long[8];
+        private Object[] entries = new Object[8];
+        private int size;
+
+        private void add(final StoredPet entry) {
+            // a pet listing the same tag twice is indexed once
+            if (size > 0 && ids[size - 1] == entry.getId()) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            ids[size] = entry.getId();
+            entries[size++] = entry;
+        }
+
+        private LongTrieMap<StoredPet> addTo(final LongTrieMap<StoredPet> posting) {
+            return posting.plusAll(ids, entries, size);
+        }
+
+        private LongTrieMap<StoredPet> toMap() {
+            return LongTrieMap.ofSorted(ids, entries, size);
+        }
+    }
+}
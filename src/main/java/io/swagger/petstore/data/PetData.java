@@ -20,96 +20,379 @@ import io.swagger.petstore.model.Category;
 import io.swagger.petstore.model.Pet;
 import io.swagger.petstore.model.Tag;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
-public class PetData {
-    private static List<Pet> pets = new ArrayList<>();
-    private static List<Category> categories = new ArrayList<>();
+public class PetData implements PetRepository {
+    // the store holds the newest catalog and decides how it is installed; readers take the newest one that is
+    // logged from the view, without locking
+    private static PetStore store = PetStore.create(System.getProperty(PetStore.STORAGE_PROPERTY));
+    private static MutationLog log = MutationLog.get();
+    private static DurableView<PetCatalog> view = new DurableView<>(log, store.catalog());
+    private static ChangeFeed feed = ChangeFeed.get();
 
     static {
-        categories.add(createCategory(1, "Dogs"));
-        categories.add(createCategory(2, "Cats"));
-        categories.add(createCategory(3, "Rabbits"));
-        categories.add(createCategory(4, "Lions"));
-
-        pets.add(createPet(1, categories.get(1), "Cat 1", new String[]{
-                "url1", "url2"}, new String[]{"tag1", "tag2"}, "available"));
-        pets.add(createPet(2, categories.get(1), "Cat 2", new String[]{
-                "url1", "url2"}, new String[]{"tag2", "tag3"}, "available"));
-        pets.add(createPet(3, categories.get(1), "Cat 3", new String[]{
-                "url1", "url2"}, new String[]{"tag3", "tag4"}, "pending"));
-
-        pets.add(createPet(4, categories.get(0), "Dog 1", new String[]{
-                "url1", "url2"}, new String[]{"tag1", "tag2"}, "available"));
-        pets.add(createPet(5, categories.get(0), "Dog 2", new String[]{
-                "url1", "url2"}, new String[]{"tag2", "tag3"}, "sold"));
-        pets.add(createPet(6, categories.get(0), "Dog 3", new String[]{
-                "url1", "url2"}, new String[]{"tag3", "tag4"}, "pending"));
-
-        pets.add(createPet(7, categories.get(3), "Lion 1", new String[]{
-                "url1", "url2"}, new String[]{"tag1", "tag2"}, "available"));
-        pets.add(createPet(8, categories.get(3), "Lion 2", new String[]{
-                "url1", "url2"}, new String[]{"tag2", "tag3"}, "available"));
-        pets.add(createPet(9, categories.get(3), "Lion 3", new String[]{
-                "url1", "url2"}, new String[]{"tag3", "tag4"}, "available"));
-
-        pets.add(createPet(10, categories.get(2), "Rabbit 1", new String[]{
-                "url1", "url2"}, new String[]{"tag3", "tag4"}, "available"));
+        if (log.isEmpty()) {
+            seed();
+        } else {
+            restore();
+        }
+    }
+
+    private static void seed() {
+        view.write(() -> store.update(current -> PetCatalog.of(Versioned.startingVersion(), Collections.emptyList())),
+                catalog -> log.queued());
+        for (final Pet pet : SampleData.pets()) {
+            storePet(pet);
+        }
     }
 
+    @Override
     public Pet getPetById(final long petId) {
-        for (final Pet pet : pets) {
-            if (pet.getId() == petId) {
-                return pet;
+        final StoredPet pet = view.get().get(petId);
+        return pet == null ? null : pet.toPet();
+    }
+
+    @Override
+    public Versioned<Pet> getVersionedPetById(final long petId) {
+        final StoredPet pet = view.get().get(petId);
+        return pet == null ? null : new Versioned<>(pet.toPet(), pet.getVersion());
+    }
+
+    /**
+     * Returns at most limit pets with any of the comma separated statuses, in id order, starting after the
+     * given id. Each page costs a seek into the id-ordered status postings, however deep it is.
+     */
+    @Override
+    public List<Pet> findPetByStatus(final String status, final Long afterId, final int limit) {
+        return collect(iteratePetsByStatus(status, afterId), limit);
+    }
+
+    /**
+     * Lazily walks the pets with any of the comma separated statuses in id order. The walk reads one catalog
+     * version, so it is a consistent point-in-time view no matter how long the caller takes to consume it.
+     */
+    @Override
+    public Iterator<Pet> iteratePetsByStatus(final String status, final Long afterId) {
+        final PetCatalog current = view.get();
+        final List<LongTrieMap<StoredPet>> postings = new ArrayList<>();
+        for (final String s : new LinkedHashSet<>(Arrays.asList(status.split(",")))) {
+            final LongTrieMap<StoredPet> petsWithStatus = current.withStatus(s);
+            if (!petsWithStatus.isEmpty()) {
+                postings.add(petsWithStatus);
             }
         }
-        return null;
+        return new UnionIterator(postings, afterId);
     }
 
-    public List<Pet> findPetByStatus(final String status) {
-        final String[] statues = status.split(",");
-        final List<Pet> result = new ArrayList<>();
-        for (final Pet pet : pets) {
-            for (final String s : statues) {
-                if (s.equals(pet.getStatus())) {
-                    result.add(pet);
+    /**
+     * Finds pets through the tag index; with matchAll only pets carrying every given tag are returned,
+     * otherwise pets carrying any of them. Each pet is returned once, in id order, starting after the
+     * given id and stopping at limit pets.
+     */
+    @Override
+    public List<Pet> findPetByTags(final List<String> tags, final boolean matchAll, final Long afterId,
+                                   final int limit) {
+        return collect(iteratePetsByTags(tags, matchAll, afterId), limit);
+    }
+
+    /**
+     * Lazy, point-in-time counterpart of {@link #findPetByTags(List, boolean, Long, int)}.
+     */
+    @Override
+    public Iterator<Pet> iteratePetsByTags(final List<String> tags, final boolean matchAll, final Long afterId) {
+        final PetCatalog current = view.get();
+        final List<LongTrieMap<StoredPet>> postings = new ArrayList<>(tags.size());
+        for (final String tag : new LinkedHashSet<>(tags)) {
+            final LongTrieMap<StoredPet> petsWithTag = current.withTag(tag);
+            if (!petsWithTag.isEmpty()) {
+                postings.add(petsWithTag);
+            } else if (matchAll) {
+                return Collections.emptyIterator();
+            }
+        }
+
+        if (matchAll && !postings.isEmpty()) {
+            return new IntersectionIterator(postings, afterId);
+        }
+        return new UnionIterator(postings, afterId);
+    }
+
+    /**
+     * Lazily walks every pet of one catalog version in id order.
+     */
+    @Override
+    public Iterator<Pet> iteratePets() {
+        return new UnionIterator(Collections.singletonList(view.get().pets()), null);
+    }
+
+    @Override
+    public Versioned<Pet> addPet(final Pet pet) {
+        return storePet(pet);
+    }
+
+    @Override
+    public long addPets(final List<Pet> pets) {
+        final Map<Long, Pet> byId = byId(pets);
+        final PetCatalog installed = view.write(() -> store.update(current -> {
+            final List<StoredPet> batch = new ArrayList<>(byId.size());
+            for (final Pet pet : byId.values()) {
+                batch.add(store.store(pet, current.nextVersion()));
+            }
+            return current.putAll(batch);
+        }), catalog -> log.queueAll(MutationLog.PET_PUT, catalog.version(), byId.values()));
+        for (final Long id : byId.keySet()) {
+            feed.publish(ChangeFeed.PET, ChangeFeed.PUT, id, installed.version());
+        }
+        return installed.version();
+    }
+
+    @Override
+    public List<Versioned<Pet>> replacePets(final List<Pet> pets) {
+        final Map<Long, Pet> byId = byId(pets);
+        final Map<Long, Pet> replaced = new LinkedHashMap<>();
+        final PetCatalog installed = view.write(() -> store.update(current -> {
+            replaced.clear();
+            final List<StoredPet> batch = new ArrayList<>(byId.size());
+            for (final Pet pet : byId.values()) {
+                if (current.get(pet.getId()) != null) {
+                    replaced.put(pet.getId(), pet);
+                    batch.add(store.store(pet, current.nextVersion()));
                 }
             }
+            return batch.isEmpty() ? current : current.putAll(batch);
+        }), catalog -> log.queueAll(MutationLog.PET_PUT, catalog.version(), replaced.values()));
+        for (final Long id : replaced.keySet()) {
+            feed.publish(ChangeFeed.PET, ChangeFeed.PUT, id, installed.version());
         }
-        return result;
+
+        final List<Versioned<Pet>> stored = new ArrayList<>(pets.size());
+        for (final Pet pet : pets) {
+            stored.add(replaced.containsKey(pet.getId()) ? new Versioned<>(pet, installed.version()) : null);
+        }
+        return stored;
     }
 
-    public List<Pet> findPetByTags(final List<String> tags) {
-        final List<Pet> result = new ArrayList<>();
+    /**
+     * Later occurrences of an id win, and the log must not hold two records of one id at one version.
+     */
+    private static Map<Long, Pet> byId(final List<Pet> pets) {
+        final Map<Long, Pet> byId = new LinkedHashMap<>();
         for (final Pet pet : pets) {
-            if (null != pet.getTags()) {
-                for (final Tag tag : pet.getTags()) {
-                    for (final String tagListString : tags) {
-                        if (tagListString.equals(tag.getName())) {
-                            result.add(pet);
-                        }
-                    }
+            byId.put(pet.getId(), pet);
+        }
+        return byId;
+    }
+
+    /**
+     * Stores the pet only if the stored pet with its id is still at the expected version.
+     *
+     * @return the stored pet, or null if the pet is gone or was changed in the meantime
+     */
+    @Override
+    public Versioned<Pet> replacePet(final Pet pet, final long expectedVersion) {
+        final boolean[] replaced = new boolean[1];
+        final PetCatalog installed = view.write(() -> store.update(current -> {
+            final StoredPet existing = current.get(pet.getId());
+            replaced[0] = existing != null && existing.getVersion() == expectedVersion;
+            return replaced[0] ? current.put(store.store(pet, current.nextVersion())) : current;
+        }), catalog -> replaced[0] ? log.queue(MutationLog.PET_PUT, catalog.version(), pet) : log.queued());
+        return replaced[0] ? published(versioned(installed.get(pet.getId()))) : null;
+    }
+
+    @Override
+    public void deletePetById(final Long petId) {
+        final boolean[] deleted = new boolean[1];
+        final PetCatalog installed = view.write(() -> store.update(current -> {
+            deleted[0] = current.get(petId) != null;
+            return current.remove(petId);
+        }), catalog -> deleted[0] ? log.queue(MutationLog.PET_DELETE, catalog.version(), petId) : log.queued());
+        if (deleted[0]) {
+            feed.publish(ChangeFeed.PET, ChangeFeed.DELETE, petId, installed.version());
+        }
+    }
+
+    /**
+     * Deletes the pet only if it is still at the expected version.
+     *
+     * @return false if the pet is gone or was changed in the meantime
+     */
+    @Override
+    public boolean deletePetById(final long petId, final long expectedVersion) {
+        final boolean[] deleted = new boolean[1];
+        final PetCatalog installed = view.write(() -> store.update(current -> {
+            final StoredPet existing = current.get(petId);
+            deleted[0] = existing != null && existing.getVersion() == expectedVersion;
+            return deleted[0] ? current.remove(petId) : current;
+        }), catalog -> deleted[0] ? log.queue(MutationLog.PET_DELETE, catalog.version(), petId) : log.queued());
+        if (deleted[0]) {
+            feed.publish(ChangeFeed.PET, ChangeFeed.DELETE, petId, installed.version());
+        }
+        return deleted[0];
+    }
+
+    private static Versioned<Pet> storePet(final Pet pet) {
+        return published(versioned(view.write(
+                () -> store.update(current -> current.put(store.store(pet, current.nextVersion()))),
+                catalog -> log.queue(MutationLog.PET_PUT, catalog.version(), pet)).get(pet.getId())));
+    }
+
+    private static Versioned<Pet> versioned(final StoredPet pet) {
+        return new Versioned<>(pet.toPet(), pet.getVersion());
+    }
+
+    private static Versioned<Pet> published(final Versioned<Pet> stored) {
+        feed.publish(ChangeFeed.PET, ChangeFeed.PUT, stored.getValue().getId(), stored.getVersion());
+        return stored;
+    }
+
+    /**
+     * Loads the pets recorded in the snapshot and mutation log, with the versions they were written at.
+     */
+    private static void restore() {
+        final MutationLog.Replay<Long> replay = log.replay(MutationLog.PET_PUT, MutationLog.PET_DELETE,
+                record -> record.getType() == MutationLog.PET_PUT
+                        ? record.getPayload(Pet.class).getId() : record.getPayload(Long.class));
+        view.write(() -> store.update(current -> {
+            final List<StoredPet> pets = new ArrayList<>(replay.getRecords().size());
+            for (final MutationLog.Record record : replay.getRecords()) {
+                if (record.getType() == MutationLog.PET_PUT) {
+                    pets.add(store.store(record.getPayload(Pet.class), record.getVersion()));
                 }
             }
+            return PetCatalog.of(Math.max(replay.getVersion(), Versioned.startingVersion()), pets);
+        }), catalog -> log.queued());
+    }
+
+    /**
+     * Writes the pets of the newest catalog version, and the catalog version itself.
+     */
+    static void snapshot(final SnapshotFile.Writer writer) throws IOException {
+        final PetCatalog current = store.catalog();
+        writer.writeSequence(MutationLog.PET_PUT, current.version());
+        for (final StoredPet pet : current.pets()) {
+            writer.write(MutationLog.PET_PUT, pet.getVersion(), pet.toPet());
+        }
+    }
+
+    private static List<Pet> collect(final Iterator<Pet> pets, final int limit) {
+        final List<Pet> result = new ArrayList<>();
+        while (pets.hasNext() && result.size() < limit) {
+            result.add(pets.next());
         }
         return result;
     }
 
-    public void addPet(final Pet pet) {
-        if (pets.size() > 0) {
-            for (int i = pets.size() - 1; i >= 0; i--) {
-                if (pets.get(i).getId() == pet.getId()) {
-                    pets.remove(i);
+    private static Iterator<StoredPet> from(final LongTrieMap<StoredPet> posting, final Long afterId) {
+        if (afterId == null) {
+            return posting.iterator();
+        }
+        if (afterId == Long.MAX_VALUE) {
+            return Collections.emptyIterator();
+        }
+        return posting.valuesFrom(afterId + 1);
+    }
+
+    /**
+     * Merges id-ordered posting lists into one id-ordered sequence without duplicates.
+     */
+    private static final class UnionIterator implements Iterator<Pet> {
+        private final List<Iterator<StoredPet>> iterators;
+        private final StoredPet[] heads;
+
+        private UnionIterator(final List<LongTrieMap<StoredPet>> postings, final Long afterId) {
+            iterators = new ArrayList<>(postings.size());
+            heads = new StoredPet[postings.size()];
+            for (int i = 0; i < postings.size(); i++) {
+                iterators.add(from(postings.get(i), afterId));
+                heads[i] = iterators.get(i).hasNext() ? iterators.get(i).next() : null;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            for (final StoredPet head : heads) {
+                if (head != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Pet next() {
+            int min = -1;
+            for (int i = 0; i < heads.length; i++) {
+                if (heads[i] != null && (min < 0 || heads[i].getId() < heads[min].getId())) {
+                    min = i;
+                }
+            }
+            if (min < 0) {
+                throw new NoSuchElementException();
+            }
+            final StoredPet pet = heads[min];
+            final long id = pet.getId();
+            for (int i = 0; i < heads.length; i++) {
+                if (heads[i] != null && heads[i].getId() == id) {
+                    heads[i] = iterators.get(i).hasNext() ? iterators.get(i).next() : null;
                 }
             }
+            return pet.toPet();
         }
-        pets.add(pet);
     }
 
-    public void deletePetById(final Long petId) {
-        pets.removeIf(pet -> pet.getId() == petId);
+    /**
+     * Walks the shortest posting list and probes the others.
+     */
+    private static final class IntersectionIterator implements Iterator<Pet> {
+        private final List<LongTrieMap<StoredPet>> others;
+        private final Iterator<StoredPet> candidates;
+        private StoredPet next;
+
+        private IntersectionIterator(final List<LongTrieMap<StoredPet>> postings, final Long afterId) {
+            postings.sort(Comparator.comparingInt(LongTrieMap::size));
+            candidates = from(postings.get(0), afterId);
+            others = postings.subList(1, postings.size());
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null && candidates.hasNext()) {
+                final StoredPet candidate = candidates.next();
+                boolean inAll = true;
+                for (int i = 0; i < others.size() && inAll; i++) {
+                    inAll = others.get(i).containsKey(candidate.getId());
+                }
+                if (inAll) {
+                    next = candidate;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Pet next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            final StoredPet pet = next;
+            advance();
+            return pet.toPet();
+        }
     }
 
     public static Pet createPet(final Long id, final Category cat, final String name,
@@ -123,37 +406,4 @@ public class PetData {
         pet.setStatus(status);
         return pet;
     }
-
-    private static Pet createPet(final long id, final Category cat, final String name, final String[] urls,
-                                 final String[] tags, final String status) {
-        final Pet pet = new Pet();
-        pet.setId(id);
-        pet.setCategory(cat);
-        pet.setName(name);
-        if (null != urls) {
-            final List<String> urlObjs = new ArrayList<>(Arrays.asList(urls));
-            pet.setPhotoUrls(urlObjs);
-        }
-        final List<Tag> tagObjs = new ArrayList<>();
-        int i = 0;
-        if (null != tags) {
-            for (final String tagString : tags) {
-                i = i + 1;
-                final Tag tag = new Tag();
-                tag.setId(i);
-                tag.setName(tagString);
-                tagObjs.add(tag);
-            }
-        }
-        pet.setTags(tagObjs);
-        pet.setStatus(status);
-        return pet;
-    }
-
-    private static Category createCategory(final long id, final String name) {
-        final Category category = new Category();
-        category.setId(id);
-        category.setName(name);
-        return category;
-    }
-}
\ No newline at end of file
+}
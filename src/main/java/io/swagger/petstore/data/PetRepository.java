@@ -0,0 +1,106 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.data;
+
+import io.swagger.petstore.model.Pet;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Storage for pets. Every stored pet carries a version that changes whenever it is stored; a pet read with its
+ * version can be replaced or deleted only while it is still at that version. {@link Repositories} picks the
+ * implementation.
+ */
+public interface PetRepository {
+    Pet getPetById(long petId);
+
+    Versioned<Pet> getVersionedPetById(long petId);
+
+    default List<Pet> findPetByStatus(final String status) {
+        return findPetByStatus(status, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns at most limit pets with any of the comma separated statuses, in id order, starting after the
+     * given id.
+     */
+    List<Pet> findPetByStatus(String status, Long afterId, int limit);
+
+    /**
+     * Lazily walks the pets with any of the comma separated statuses in id order, starting after the given id.
+     */
+    Iterator<Pet> iteratePetsByStatus(String status, Long afterId);
+
+    default List<Pet> findPetByTags(final List<String> tags) {
+        return findPetByTags(tags, false);
+    }
+
+    default List<Pet> findPetByTags(final List<String> tags, final boolean matchAll) {
+        return findPetByTags(tags, matchAll, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns at most limit pets carrying every given tag with matchAll, or any of them otherwise, each once,
+     * in id order, starting after the given id.
+     */
+    List<Pet> findPetByTags(List<String> tags, boolean matchAll, Long afterId, int limit);
+
+    /**
+     * Lazy counterpart of {@link #findPetByTags(List, boolean, Long, int)}.
+     */
+    Iterator<Pet> iteratePetsByTags(List<String> tags, boolean matchAll, Long afterId);
+
+    /**
+     * Lazily walks every pet in id order as of the call, however long the caller takes to consume it.
+     */
+    Iterator<Pet> iteratePets();
+
+    Versioned<Pet> addPet(Pet pet);
+
+    /**
+     * Stores the pets as one update: readers see either none or all of them, and they share one version. A pet
+     * listed more than once is stored as its last occurrence.
+     *
+     * @return the version the pets were stored at
+     */
+    long addPets(List<Pet> pets);
+
+    /**
+     * Stores, as one update, those of the pets whose ids are already stored; the others are left out. A pet
+     * listed more than once is stored as its last occurrence.
+     *
+     * @return for each pet in order, the pet with the version it was stored at, or null if its id was not stored
+     */
+    List<Versioned<Pet>> replacePets(List<Pet> pets);
+
+    /**
+     * Stores the pet only if the stored pet with its id is still at the expected version.
+     *
+     * @return the stored pet, or null if the pet is gone or was changed in the meantime
+     */
+    Versioned<Pet> replacePet(Pet pet, long expectedVersion);
+
+    void deletePetById(Long petId);
+
+    /**
+     * Deletes the pet only if it is still at the expected version.
+     *
+     * @return false if the pet is gone or was changed in the meantime
+     */
+    boolean deletePetById(long petId, long expectedVersion);
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.swagger.petstore.data;
+
+import io.swagger.petstore.model.Pet;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Storage behind {@link PetData}: publishes the current {@link PetCatalog} and decides how pets are
+ * encoded in it. Selected with the {@value #STORAGE_PROPERTY} system property ({@code heap} or
+ * {@code offheap}).
+ */
+interface PetStore {
+    String STORAGE_PROPERTY = "petstore.pets.storage";
+
+    /**
+     * The current catalog. Never blocks.
+     */
+    PetCatalog catalog();
+
+    /**
+     * Encodes a pet for inclusion in a catalog at the given version.
+     */
+    StoredPet store(Pet pet, long version);
+
+    /**
+     * Atomically replaces the current catalog with the result of the mutation and returns the catalog that
+     * was installed. The mutation may be applied more than once and must not have side effects beyond
+     * {@link #store(Pet, long)}.
+     */
+    PetCatalog update(UnaryOperator<PetCatalog> mutation);
+
+    static PetStore create(final String storage) {
+        if ("offheap".equalsIgnoreCase(storage)) {
+            return new OffHeapPetStore();
+        }
+        if (storage == null || "heap".equalsIgnoreCase(storage)) {
+            return new HeapPetStore();
+        }
+        throw new IllegalArgumentException("Unknown " + STORAGE_PROPERTY + " value: " + storage);
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.data;
+
+import io.swagger.v3.core.util.Yaml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Chooses the backend of the pet, order and user repositories. The {@value #BACKEND_PROPERTY} system property,
+ * or else the {@value #BACKEND_SETTING} entry of the inflector configuration, names one of:
+ * <ul>
+ * <li>{@code list}: the original unindexed lists,</li>
+ * <li>{@code heap} (default): indexed concurrent stores in memory,</li>
+ * <li>{@code disk}: the indexed stores made durable by the {@link MutationLog} and its snapshots, under the
+ * directory named by the {@value MutationLog#DIRECTORY_PROPERTY} system property or the
+ * {@value #DIRECTORY_SETTING} entry (default {@value #DEFAULT_DIRECTORY}).</li>
+ * </ul>
+ * For compatibility, setting the log directory property without the backend property selects {@code disk}.
+ */
+public final class Repositories {
+    public static final String BACKEND_PROPERTY = "petstore.repository";
+    static final String BACKEND_SETTING = "repository";
+    static final String DIRECTORY_SETTING = "repositoryDirectory";
+    static final String DEFAULT_DIRECTORY = "data";
+
+    static final String LIST = "list";
+    static final String HEAP = "heap";
+    static final String DISK = "disk";
+
+    // read from the same file, located the same way, as the inflector reads its own configuration
+    private static final Map<?, ?> settings = readSettings(System.getProperty("config", "inflector.yaml"));
+    private static final String backend = backend();
+
+    private Repositories() {
+    }
+
+    public static PetRepository pets() {
+        return Backend.PETS;
+    }
+
+    public static OrderRepository orders() {
+        return Backend.ORDERS;
+    }
+
+    public static UserRepository users() {
+        return Backend.USERS;
+    }
+
+    /**
+     * Runs the given function, which takes views of the pet, order and user repositories such as their iterators,
+     * at one point in time: no write to any of the stores becomes visible while it runs. Writers wait while the
+     * views are taken, so the function should only take them, not consume them.
+     */
+    public static <T> T atOnePointInTime(final Supplier<T> views) {
+        if (LIST.equals(backend)) {
+            // the list repositories write under their own monitors
+            synchronized (Backend.PETS) {
+                synchronized (Backend.ORDERS) {
+                    synchronized (Backend.USERS) {
+                        return views.get();
+                    }
+                }
+            }
+        }
+        return DurableView.acrossStores(views);
+    }
+
+    /**
+     * The mutation log directory, or null unless the {@code disk} backend is selected.
+     */
+    static String logDirectory() {
+        if (!DISK.equals(backend)) {
+            return null;
+        }
+        return setting(MutationLog.DIRECTORY_PROPERTY, DIRECTORY_SETTING, DEFAULT_DIRECTORY);
+    }
+
+    private static String backend() {
+        String configured = System.getProperty(BACKEND_PROPERTY);
+        if (configured == null || configured.isEmpty()) {
+            final String directory = System.getProperty(MutationLog.DIRECTORY_PROPERTY);
+            if (directory != null && !directory.isEmpty()) {
+                return DISK;
+            }
+            configured = setting(BACKEND_PROPERTY, BACKEND_SETTING, HEAP);
+        }
+        final String name = configured.toLowerCase();
+        if (!LIST.equals(name) && !HEAP.equals(name) && !DISK.equals(name)) {
+            throw new IllegalArgumentException("Unknown repository backend: " + configured);
+        }
+        return name;
+    }
+
+    private static String setting(final String property, final String key, final String defaultValue) {
+        final String value = System.getProperty(property);
+        if (value != null && !value.isEmpty()) {
+            return value;
+        }
+        final Object configured = settings.get(key);
+        return configured == null ? defaultValue : configured.toString();
+    }
+
+    private static Map<?, ?> readSettings(final String location) {
+        final File file = new File(location);
+        if (!file.isFile()) {
+            return Collections.emptyMap();
+        }
+        try {
+            final Map<?, ?> settings = Yaml.mapper().readValue(file, Map.class);
+            return settings == null ? Collections.emptyMap() : settings;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Created on first use, so the stores of the backends not selected are never loaded.
+     */
+    private static final class Backend {
+        private static final PetRepository PETS = LIST.equals(backend) ? new ListPetRepository() : new PetData();
+        private static final OrderRepository ORDERS = LIST.equals(backend)
+                ? new ListOrderRepository() : new OrderData();
+        private static final UserRepository USERS = LIST.equals(backend) ? new ListUserRepository() : new UserData();
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.data;
+
+import io.swagger.petstore.model.Category;
+import io.swagger.petstore.model.Order;
+import io.swagger.petstore.model.Pet;
+import io.swagger.petstore.model.Tag;
+import io.swagger.petstore.model.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The pets, orders and users every backend starts out with when it has nothing stored.
+ */
+final class SampleData {
+    private SampleData() {
+    }
+
+    static List<Pet> pets() {
+        final Category dogs = createCategory(1, "Dogs");
+        final Category cats = createCategory(2, "Cats");
+        final Category rabbits = createCategory(3, "Rabbits");
+        final Category lions = createCategory(4, "Lions");
+
+        final List<Pet> pets = new ArrayList<>();
+        pets.add(createPet(1, cats, "Cat 1", new String[]{
+                "url1", "url2"}, new String[]{"tag1", "tag2"}, "available"));
+        pets.add(createPet(2, cats, "Cat 2", new String[]{
+                "url1", "url2"}, new String[]{"tag2", "tag3"}, "available"));
+        pets.add(createPet(3, cats, "Cat 3", new String[]{
+                "url1", "url2"}, new String[]{"tag3", "tag4"}, "pending"));
+
+        pets.add(createPet(4, dogs, "Dog 1", new String[]{
+                "url1", "url2"}, new String[]{"tag1", "tag2"}, "available"));
+        pets.add(createPet(5, dogs, "Dog 2", new String[]{
+                "url1", "url2"}, new String[]{"tag2", "tag3"}, "sold"));
+        pets.add(createPet(6, dogs, "Dog 3", new String[]{
+                "url1", "url2"}, new String[]{"tag3", "tag4"}, "pending"));
+
+        pets.add(createPet(7, lions, "Lion 1", new String[]{
+                "url1", "url2"}, new String[]{"tag1", "tag2"}, "available"));
+        pets.add(createPet(8, lions, "Lion 2", new String[]{
+                "url1", "url2"}, new String[]{"tag2", "tag3"}, "available"));
+        pets.add(createPet(9, lions, "Lion 3", new String[]{
+                "url1", "url2"}, new String[]{"tag3", "tag4"}, "available"));
+
+        pets.add(createPet(10, rabbits, "Rabbit 1", new String[]{
+                "url1", "url2"}, new String[]{"tag3", "tag4"}, "available"));
+        return pets;
+    }
+
+    static List<Order> orders() {
+        final List<Order> orders = new ArrayList<>();
+        orders.add(OrderData.createOrder(1, 1, 100, new Date(), "placed", true));
+        orders.add(OrderData.createOrder(2, 1, 50, new Date(), "approved", true));
+        orders.add(OrderData.createOrder(3, 1, 50, new Date(), "delivered", true));
+        return orders;
+    }
+
+    static List<User> users() {
+        final List<User> users = new ArrayList<>();
+        users.add(UserData.createUser(1, "user1", "first name 1", "last name 1",
+                "email1@test.com", "123-456-7890", 1));
+        users.add(UserData.createUser(2, "user2", "first name 2", "last name 2",
+                "email2@test.com", "123-456-7890", 2));
+        users.add(UserData.createUser(3, "user3", "first name 3", "last name 3",
+                "email3@test.com", "123-456-7890", 3));
+        users.add(UserData.createUser(4, "user4", "first name 4", "last name 4",
+                "email4@test.com", "123-456-7890", 1));
+        users.add(UserData.createUser(5, "user5", "first name 5", "last name 5",
+                "email5@test.com", "123-456-7890", 2));
+        users.add(UserData.createUser(6, "user6", "first name 6", "last name 6",
+                "email6@test.com", "123-456-7890", 3));
+        users.add(UserData.createUser(7, "user7", "first name 7", "last name 7",
+                "email7@test.com", "123-456-7890", 1));
+        users.add(UserData.createUser(8, "user8", "first name 8", "last name 8",
+                "email8@test.com", "123-456-7890", 2));
+        users.add(UserData.createUser(9, "user9", "first name 9", "last name 9",
+                "email9@test.com", "123-456-7890", 3));
+        users.add(UserData.createUser(10, "user10", "first name 10", "last name 10",
+                "email10@test.com", "123-456-7890", 1));
+        users.add(UserData.createUser(11, "user?10", "first name ?10", "last name ?10",
+                "email101@test.com", "123-456-7890", 1));
+        return users;
+    }
+
+    private static Pet createPet(final long id, final Category cat, final String name, final String[] urls,
+                                 final String[] tags, final String status) {
+        final Pet pet = new Pet();
+        pet.setId(id);
+        pet.setCategory(cat);
+        pet.setName(name);
+        if (null != urls) {
+            final List<String> urlObjs = new ArrayList<>(Arrays.asList(urls));
+            pet.setPhotoUrls(urlObjs);
+        }
+        final List<Tag> tagObjs = new ArrayList<>();
+        int i = 0;
+        if (null != tags) {
+            for (final String tagString : tags) {
+                i = i + 1;
+                final Tag tag = new Tag();
+                tag.setId(i);
+                tag.setName(tagString);
+                tagObjs.add(tag);
+            }
+        }
+        pet.setTags(tagObjs);
+        pet.setStatus(status);
+        return pet;
+    }
+
+    private static Category createCategory(final long id, final String name) {
+        final Category category = new Category();
+        category.setId(id);
+        category.setName(name);
+        return category;
+    }
+}
@@ -0,0 +1,337 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.swagger.petstore.data;
+
+import io.swagger.petstore.model.Category;
+import io.swagger.petstore.model.Order;
+import io.swagger.petstore.model.Pet;
+import io.swagger.petstore.model.Tag;
+import io.swagger.petstore.model.User;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary image of every stored entity with its version. Records are framed like {@link MutationLog}
+ * records, but the payload is a fixed binary encoding of the entity rather than JSON, and the file is read
+ * through memory mapping, so loading costs little more than decoding the entities.
+ */
+final class SnapshotFile {
+    private static final int MAGIC = 0x50534E50;
+    private static final int FORMAT = 1;
+    private static final int FILE_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+
+    // mapped a window at a time; a single mapping cannot exceed 2 GB
+    private static final long WINDOW = 1L << 30;
+
+    private static final int NULL = -1;
+
+    private SnapshotFile() {
+    }
+
+    static Writer create(final Path file) throws IOException {
+        return new Writer(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE));
+    }
+
+    /**
+     * Passes every record in the file to the consumer. The records' payloads are views on the mapped file.
+     *
+     * @throws IOException if the file is not a snapshot or a record fails its checksum
+     */
+    static void read(final Path file, final Consumer<MutationLog.Record> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            ByteBuffer window = map(channel, 0, size);
+            if (size < FILE_HEADER_BYTES || window.getInt(0) != MAGIC || window.getInt(Integer.BYTES) != FORMAT) {
+                throw new IOException("Not a snapshot: " + file);
+            }
+
+            long windowStart = 0;
+            long position = FILE_HEADER_BYTES;
+            while (position < size) {
+                int offset = (int) (position - windowStart);
+                if (offset + RECORD_HEADER_BYTES > window.limit()
+                        || offset + RECORD_HEADER_BYTES + window.getInt(offset) > window.limit()) {
+                    windowStart = position;
+                    window = map(channel, windowStart, size);
+                    offset = 0;
+                }
+                final int length = window.getInt(offset);
+                final int checksum = window.getInt(offset + Integer.BYTES);
+                if (length < 1 + Long.BYTES || offset + RECORD_HEADER_BYTES + length > window.limit()) {
+                    throw new IOException("Truncated snapshot: " + file);
+                }
+
+                final ByteBuffer body = window.duplicate();
+                ((Buffer) body).limit(offset + RECORD_HEADER_BYTES + length);
+                ((Buffer) body).position(offset + RECORD_HEADER_BYTES);
+                final CRC32 crc = new CRC32();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    throw new IOException("Corrupt snapshot record at " + position + ": " + file);
+                }
+                consumer.accept(new MutationLog.Record(body.slice(), true));
+                position += RECORD_HEADER_BYTES + length;
+            }
+        }
+    }
+
+    /**
+     * Decodes the payload of a snapshot record of the given type.
+     */
+    static Object decode(final byte type, final ByteBuffer in) {
+        switch (type) {
+            case MutationLog.PET_PUT:
+                return decodePet(in);
+            case MutationLog.ORDER_PUT:
+                return decodeOrder(in);
+            case MutationLog.USER_PUT:
+                return decodeUser(in);
+            default:
+                throw new IllegalArgumentException("No snapshot encoding for record type " + type);
+        }
+    }
+
+    private static MappedByteBuffer map(final FileChannel channel, final long position, final long size)
+            throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, size - position));
+    }
+
+    private static Pet decodePet(final ByteBuffer in) {
+        final Pet pet = new Pet();
+        pet.setId(in.getLong());
+        pet.setName(getString(in));
+        if (in.get() != 0) {
+            final Category category = new Category();
+            category.setId(in.getLong());
+            category.setName(getString(in));
+            pet.setCategory(category);
+        }
+        final int urlCount = in.getInt();
+        if (urlCount == NULL) {
+            pet.setPhotoUrls(null);
+        } else {
+            final List<String> urls = new ArrayList<>(urlCount);
+            for (int i = 0; i < urlCount; i++) {
+                urls.add(getString(in));
+            }
+            pet.setPhotoUrls(urls);
+        }
+        final int tagCount = in.getInt();
+        if (tagCount == NULL) {
+            pet.setTags(null);
+        } else {
+            final List<Tag> tags = new ArrayList<>(tagCount);
+            for (int i = 0; i < tagCount; i++) {
+                if (in.get() == 0) {
+                    tags.add(null);
+                } else {
+                    final Tag tag = new Tag();
+                    tag.setId(in.getLong());
+                    tag.setName(getString(in));
+                    tags.add(tag);
+                }
+            }
+            pet.setTags(tags);
+        }
+        pet.setStatus(getString(in));
+        return pet;
+    }
+
+    private static Order decodeOrder(final ByteBuffer in) {
+        final Order order = new Order();
+        order.setId(in.getLong());
+        order.setPetId(in.getLong());
+        order.setQuantity(in.getInt());
+        final long shipDate = in.getLong();
+        order.setShipDate(shipDate == Long.MIN_VALUE ? null : new Date(shipDate));
+        order.setStatus(getString(in));
+        order.setComplete(in.get() != 0);
+        return order;
+    }
+
+    private static User decodeUser(final ByteBuffer in) {
+        final User user = new User();
+        user.setId(in.getLong());
+        user.setUsername(getString(in));
+        user.setFirstName(getString(in));
+        user.setLastName(getString(in));
+        user.setEmail(getString(in));
+        user.setPassword(getString(in));
+        user.setPhone(getString(in));
+        user.setUserStatus(in.getInt());
+        return user;
+    }
+
+    private static String getString(final ByteBuffer in) {
+        final int length = in.getInt();
+        if (length == NULL) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a snapshot. Closing it forces the file to disk.
+     */
+    static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final OutputStream out;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final DataOutputStream data = new DataOutputStream(body);
+        private final DataOutputStream header;
+
+        private Writer(final FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            this.header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeInt(FORMAT);
+        }
+
+        void write(final byte type, final long version, final Object entity) throws IOException {
+            body.reset();
+            data.writeByte(type);
+            data.writeLong(version);
+            switch (type) {
+                case MutationLog.PET_PUT:
+                    encodePet((Pet) entity);
+                    break;
+                case MutationLog.ORDER_PUT:
+                    encodeOrder((Order) entity);
+                    break;
+                case MutationLog.USER_PUT:
+                    encodeUser((User) entity);
+                    break;
+                default:
+                    throw new IllegalArgumentException("No snapshot encoding for record type " + type);
+            }
+            writeBody();
+        }
+
+        private void writeBody() throws IOException {
+            data.flush();
+            final byte[] bytes = body.toByteArray();
+            final CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+            header.writeInt(bytes.length);
+            header.writeInt((int) crc.getValue());
+            out.write(bytes);
+        }
+
+        /**
+         * Records the version sequence of the store with the given put type, so that versions handed out for
+         * entities deleted before the snapshot are not handed out again.
+         */
+        void writeSequence(final byte putType, final long version) throws IOException {
+            body.reset();
+            data.writeByte(putType | MutationLog.SEQUENCE);
+            data.writeLong(version);
+            writeBody();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.flush();
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void encodePet(final Pet pet) throws IOException {
+            data.writeLong(pet.getId());
+            putString(pet.getName());
+            final Category category = pet.getCategory();
+            data.writeBoolean(category != null);
+            if (category != null) {
+                data.writeLong(category.getId());
+                putString(category.getName());
+            }
+            final List<String> urls = pet.getPhotoUrls();
+            data.writeInt(urls == null ? NULL : urls.size());
+            if (urls != null) {
+                for (final String url : urls) {
+                    putString(url);
+                }
+            }
+            final List<Tag> tags = pet.getTags();
+            data.writeInt(tags == null ? NULL : tags.size());
+            if (tags != null) {
+                for (final Tag tag : tags) {
+                    data.writeBoolean(tag != null);
+                    if (tag != null) {
+                        data.writeLong(tag.getId());
+                        putString(tag.getName());
+                    }
+                }
+            }
+            putString(pet.getStatus());
+        }
+
+        private void encodeOrder(final Order order) throws IOException {
+            data.writeLong(order.getId());
+            data.writeLong(order.getPetId());
+            data.writeInt(order.getQuantity());
+            data.writeLong(order.getShipDate() == null ? Long.MIN_VALUE : order.getShipDate().getTime());
+            putString(order.getStatus());
+            data.writeBoolean(order.isComplete());
+        }
+
+        private void encodeUser(final User user) throws IOException {
+            data.writeLong(user.getId());
+            putString(user.getUsername());
+            putString(user.getFirstName());
+            putString(user.getLastName());
+            putString(user.getEmail());
+            putString(user.getPassword());
+            putString(user.getPhone());
+            data.writeInt(user.getUserStatus());
+        }
+
+        private void putString(final String value) throws IOException {
+            if (value == null) {
+                data.writeInt(NULL);
+                return;
+            }
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.swagger.petstore.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a {@link SnapshotFile} of all stores in the background every {@value #INTERVAL_PROPERTY} seconds
+ * (default {@value #DEFAULT_INTERVAL}, 0 disables) if anything was logged since the last one, and then drops the
+ * log generations the snapshot covers. Requests are not blocked: the stores are read through their lock-free
+ * views while writers carry on logging to the new generation.
+ */
+final class Snapshotter {
+    static final String INTERVAL_PROPERTY = "petstore.snapshot.interval";
+    static final long DEFAULT_INTERVAL = 300;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Snapshotter.class);
+
+    private Snapshotter() {
+    }
+
+    static void start(final MutationLog log) {
+        final long interval = Long.getLong(INTERVAL_PROPERTY, DEFAULT_INTERVAL);
+        if (interval <= 0) {
+            return;
+        }
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            final Thread thread = new Thread(task, "petstore-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot(log);
+            } catch (IOException | RuntimeException e) {
+                // the log still holds everything; try again next time
+                LOGGER.error("Snapshot failed", e);
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Snapshots the stores if anything was logged since the last snapshot.
+     */
+    static void snapshot(final MutationLog log) throws IOException {
+        if (!log.hasAppendedSinceRotation()) {
+            return;
+        }
+
+        // everything the stores have not installed yet goes to the new generation, which the snapshot does not
+        // replace; the snapshot reads the installed states, whether or not readers are shown them yet
+        final long generation = log.rotate();
+        final Path target = log.snapshotFile(generation);
+        final Path temporary = Paths.get(target + ".tmp");
+        try (SnapshotFile.Writer writer = SnapshotFile.create(temporary)) {
+            PetData.snapshot(writer);
+            OrderData.snapshot(writer);
+            UserData.snapshot(writer);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        log.deleteBefore(generation);
+    }
+}
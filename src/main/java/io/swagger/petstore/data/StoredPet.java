@@ -0,0 +1,37 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.swagger.petstore.data;
+
+import io.swagger.petstore.model.Pet;
+
+import java.util.List;
+
+/**
+ * A pet as a {@link PetCatalog} holds it. The catalog only needs the id, version and indexed fields;
+ * the full {@link Pet} is produced on demand, which lets a store keep pets in a compact encoding.
+ */
+interface StoredPet {
+
+    long getId();
+
+    long getVersion();
+
+    String getStatus();
+
+    List<String> getTagNames();
+
+    Pet toPet();
+}
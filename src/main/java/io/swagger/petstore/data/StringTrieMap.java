@@ -0,0 +1,193 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.data;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Immutable map from string keys to non-null values: a {@link LongTrieMap} over a 64-bit hash of each key,
+ * with the rare keys that share a hash chained in one slot. Like the trie under it, every instance is a stable
+ * snapshot that can be read without locking. Iteration is in hash order.
+ */
+final class StringTrieMap<V> implements Iterable<V> {
+    private static final StringTrieMap<?> EMPTY = new StringTrieMap<>(LongTrieMap.empty(), 0);
+
+    private final LongTrieMap<Entry<V>> entries;
+    private final int size;
+
+    private StringTrieMap(final LongTrieMap<Entry<V>> entries, final int size) {
+        this.entries = entries;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> StringTrieMap<V> empty() {
+        return (StringTrieMap<V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    V get(final String key) {
+        for (Entry<V> entry = entries.get(hash(key)); entry != null; entry = entry.next) {
+            if (entry.key.equals(key)) {
+                return entry.value;
+            }
+        }
+        return null;
+    }
+
+    StringTrieMap<V> plus(final String key, final V value) {
+        Objects.requireNonNull(value);
+        final long hash = hash(key);
+        final Entry<V> chain = entries.get(hash);
+        final Entry<V> rest = without(chain, key);
+        final int newSize = rest == chain ? size + 1 : size;
+        return new StringTrieMap<>(entries.plus(hash, new Entry<>(key, value, rest)), newSize);
+    }
+
+    /**
+     * Adds or replaces every entry of the map. The keys are sorted by hash so that each chain is rebuilt once
+     * and the trie is merged in one {@link LongTrieMap#plusAll} pass instead of one path copy per key.
+     */
+    StringTrieMap<V> plusAll(final Map<String, V> added) {
+        if (added.isEmpty()) {
+            return this;
+        }
+        final Addition[] sorted = new Addition[added.size()];
+        int n = 0;
+        for (final Map.Entry<String, V> entry : added.entrySet()) {
+            sorted[n++] = new Addition(hash(entry.getKey()), entry.getKey(), Objects.requireNonNull(entry.getValue()));
+        }
+        Arrays.parallelSort(sorted, Comparator.comparingLong(addition -> addition.hash));
+
+        final long[] hashes = new long[sorted.length];
+        final Object[] chains = new Object[sorted.length];
+        int chainCount = 0;
+        int newSize = size;
+        for (int i = 0; i < sorted.length; ) {
+            final long hash = sorted[i].hash;
+            Entry<V> chain = entries.get(hash);
+            for (; i < sorted.length && sorted[i].hash == hash; i++) {
+                final Entry<V> rest = without(chain, sorted[i].key);
+                if (rest == chain) {
+                    newSize++;
+                }
+                @SuppressWarnings("unchecked")
+                final V value = (V) sorted[i].value;
+                chain = new Entry<>(sorted[i].key, value, rest);
+            }
+            hashes[chainCount] = hash;
+            chains[chainCount++] = chain;
+        }
+        return new StringTrieMap<>(entries.plusAll(hashes, chains, chainCount), newSize);
+    }
+
+    StringTrieMap<V> minus(final String key) {
+        final long hash = hash(key);
+        final Entry<V> chain = entries.get(hash);
+        final Entry<V> rest = without(chain, key);
+        if (rest == chain) {
+            return this;
+        }
+        return new StringTrieMap<>(rest == null ? entries.minus(hash) : entries.plus(hash, rest), size - 1);
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+        return new ValueIterator<>(entries.iterator());
+    }
+
+    /**
+     * The chain without the entry for the key; the same chain if it has no such entry.
+     */
+    private static <V> Entry<V> without(final Entry<V> chain, final String key) {
+        if (chain == null) {
+            return null;
+        }
+        if (chain.key.equals(key)) {
+            return chain.next;
+        }
+        final Entry<V> rest = without(chain.next, key);
+        return rest == chain.next ? chain : new Entry<>(chain.key, chain.value, rest);
+    }
+
+    // FNV-1a over the UTF-16 code units
+    private static long hash(final String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static final class Entry<V> {
+        private final String key;
+        private final V value;
+        private final Entry<V> next;
+
+        private Entry(final String key, final V value, final Entry<V> next) {
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    private static final class Addition {
+        private final long hash;
+        private final String key;
+        private final Object value;
+
+        private Addition(final long hash, final String key, final Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final class ValueIterator<V> implements Iterator<V> {
+        private final Iterator<Entry<V>> chains;
+        private Entry<V> next;
+
+        private ValueIterator(final Iterator<Entry<V>> chains) {
+            this.chains = chains;
+            this.next = chains.hasNext() ? chains.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public V next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            final V value = next.value;
+            next = next.next != null ? next.next : chains.hasNext() ? chains.next() : null;
+            return value;
+        }
+    }
+}
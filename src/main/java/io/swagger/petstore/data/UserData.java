@@ -18,60 +18,232 @@ package io.swagger.petstore.data;
 
 import io.swagger.petstore.model.User;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
-public class UserData {
-    private static List<User> users = new ArrayList<>();
+public class UserData implements UserRepository {
+    // the newest indexes, only installed under the write lock of the view; readers take the newest ones that are
+    // logged from the view, without locking
+    private static AtomicReference<Users> users = new AtomicReference<>(Users.EMPTY);
+    private static AtomicLong versions = new AtomicLong(Versioned.startingVersion());
+    private static MutationLog log = MutationLog.get();
+    private static DurableView<Users> view = new DurableView<>(log, Users.EMPTY);
+    private static ChangeFeed feed = ChangeFeed.get();
 
     static {
-        users.add(createUser(1, "user1", "first name 1", "last name 1",
-                "email1@test.com", "123-456-7890", 1));
-        users.add(createUser(2, "user2", "first name 2", "last name 2",
-                "email2@test.com", "123-456-7890", 2));
-        users.add(createUser(3, "user3", "first name 3", "last name 3",
-                "email3@test.com", "123-456-7890", 3));
-        users.add(createUser(4, "user4", "first name 4", "last name 4",
-                "email4@test.com", "123-456-7890", 1));
-        users.add(createUser(5, "user5", "first name 5", "last name 5",
-                "email5@test.com", "123-456-7890", 2));
-        users.add(createUser(6, "user6", "first name 6", "last name 6",
-                "email6@test.com", "123-456-7890", 3));
-        users.add(createUser(7, "user7", "first name 7", "last name 7",
-                "email7@test.com", "123-456-7890", 1));
-        users.add(createUser(8, "user8", "first name 8", "last name 8",
-                "email8@test.com", "123-456-7890", 2));
-        users.add(createUser(9, "user9", "first name 9", "last name 9",
-                "email9@test.com", "123-456-7890", 3));
-        users.add(createUser(10, "user10", "first name 10", "last name 10",
-                "email10@test.com", "123-456-7890", 1));
-        users.add(createUser(11, "user?10", "first name ?10", "last name ?10",
-                "email101@test.com", "123-456-7890", 1));
+        if (log.isEmpty()) {
+            seed();
+        } else {
+            restore();
+        }
+    }
 
+    private static void seed() {
+        for (final User user : SampleData.users()) {
+            storeUser(user);
+        }
     }
 
+    @Override
     public User findUserByName(final String username) {
-        for (final User user : users) {
-            if (user.getUsername().equals(username)) {
-                return user;
+        final Versioned<User> user = findVersionedUserByName(username);
+        return user == null ? null : user.getValue();
+    }
+
+    @Override
+    public Versioned<User> findVersionedUserByName(final String username) {
+        if (username == null) {
+            return null;
+        }
+        return view.get().byName.get(username);
+    }
+
+    @Override
+    public User findUserById(final long id) {
+        final Versioned<User> user = view.get().byId.get(id);
+        return user == null ? null : user.getValue();
+    }
+
+    /**
+     * Lazily walks every user. The walk reads one version of the indexes, so it is a consistent point-in-time
+     * view no matter how long the caller takes to consume it.
+     */
+    @Override
+    public Iterator<User> iterateUsers() {
+        final Iterator<Versioned<User>> current = view.get().byName.iterator();
+        return new Iterator<User>() {
+            @Override
+            public boolean hasNext() {
+                return current.hasNext();
             }
+
+            @Override
+            public User next() {
+                return current.next().getValue();
+            }
+        };
+    }
+
+    @Override
+    public Versioned<User> addUser(final User user) {
+        return storeUser(user);
+    }
+
+    /**
+     * Stores the users as one update at one version, merging them into both indexes in one pass each, and
+     * logs them in one flush.
+     */
+    @Override
+    public long addUsers(final List<User> users) {
+        // only the last occurrence of a username is stored, in the position of that occurrence, so that ids
+        // shared between usernames end up with the user a one-at-a-time insert would leave them with
+        final Map<String, User> byName = new LinkedHashMap<>();
+        for (final User user : users) {
+            byName.remove(user.getUsername());
+            byName.put(user.getUsername(), user);
         }
-        return null;
+        // taken under the write lock, so that versions are installed in the order they were handed out
+        final long[] version = new long[1];
+        view.write(() -> {
+            version[0] = versions.incrementAndGet();
+            return install(UserData.users.get().putAll(byName.values(), version[0]));
+        }, installed -> log.queueAll(MutationLog.USER_PUT, version[0], byName.values()));
+        for (final String username : byName.keySet()) {
+            feed.publish(ChangeFeed.USER, ChangeFeed.PUT, username, version[0]);
+        }
+        return version[0];
     }
 
-    public void addUser(final User user) {
-        if (users.size() > 0) {
-            for (int i = users.size() - 1; i >= 0; i--) {
-                if (users.get(i).getUsername().equals(user.getUsername())) {
-                    users.remove(i);
-                }
+    /**
+     * Replaces the user stored under the given username if it is still at the expected version. The
+     * replacement may carry a different username, which must not be taken; the old name is released and the new
+     * one taken in the same update.
+     *
+     * @return the stored user, or null if the user is gone or was changed in the meantime, or the new name is
+     * taken
+     */
+    @Override
+    public Versioned<User> replaceUser(final String username, final User user, final long expectedVersion) {
+        final boolean renamed = !username.equals(user.getUsername());
+        final boolean[] replaced = new boolean[1];
+        final Users installed = view.write(() -> {
+            final Users current = users.get();
+            final Versioned<User> existing = current.byName.get(username);
+            replaced[0] = existing != null && existing.getVersion() == expectedVersion
+                    && !(renamed && current.byName.get(user.getUsername()) != null);
+            return replaced[0]
+                    ? install(current.remove(username).put(new Versioned<>(user, versions.incrementAndGet())))
+                    : current;
+        }, current -> {
+            if (!replaced[0]) {
+                return log.queued();
             }
+            final long version = current.byName.get(user.getUsername()).getVersion();
+            return renamed
+                    ? log.queueAll(new byte[]{MutationLog.USER_DELETE, MutationLog.USER_PUT}, version,
+                    Arrays.asList(username, user))
+                    : log.queue(MutationLog.USER_PUT, version, user);
+        });
+        if (!replaced[0]) {
+            return null;
+        }
+        final Versioned<User> stored = installed.byName.get(user.getUsername());
+        if (renamed) {
+            feed.publish(ChangeFeed.USER, ChangeFeed.DELETE, username, stored.getVersion());
         }
-        users.add(user);
+        feed.publish(ChangeFeed.USER, ChangeFeed.PUT, user.getUsername(), stored.getVersion());
+        return stored;
     }
 
+    @Override
     public void deleteUser(final String username) {
-        users.removeIf(user -> user.getUsername().equals(username));
+        if (username != null) {
+            removeUser(username, null);
+        }
+    }
+
+    /**
+     * Deletes the user only if it is still at the expected version.
+     *
+     * @return false if the user is gone or was changed in the meantime
+     */
+    @Override
+    public boolean deleteUser(final String username, final long expectedVersion) {
+        return removeUser(username, expectedVersion);
+    }
+
+    private static boolean removeUser(final String username, final Long expectedVersion) {
+        // the version of the delete, or 0 if there was nothing to delete
+        final long[] deletedAt = new long[1];
+        view.write(() -> {
+            final Users current = users.get();
+            final Versioned<User> existing = current.byName.get(username);
+            if (existing == null || expectedVersion != null && existing.getVersion() != expectedVersion) {
+                return current;
+            }
+            deletedAt[0] = versions.incrementAndGet();
+            return install(current.remove(username));
+        }, installed -> deletedAt[0] == 0
+                ? log.queued() : log.queue(MutationLog.USER_DELETE, deletedAt[0], username));
+        if (deletedAt[0] == 0) {
+            return false;
+        }
+        feed.publish(ChangeFeed.USER, ChangeFeed.DELETE, username, deletedAt[0]);
+        return true;
+    }
+
+    private static Versioned<User> storeUser(final User user) {
+        final Versioned<User> stored = view.write(
+                () -> install(users.get().put(new Versioned<>(user, versions.incrementAndGet()))),
+                installed -> log.queue(MutationLog.USER_PUT, installed.byName.get(user.getUsername()).getVersion(),
+                        user)).byName.get(user.getUsername());
+        feed.publish(ChangeFeed.USER, ChangeFeed.PUT, user.getUsername(), stored.getVersion());
+        return stored;
+    }
+
+    private static Users install(final Users next) {
+        users.set(next);
+        return next;
+    }
+
+    /**
+     * Loads the users recorded in the snapshot and mutation log, with the versions they were written at.
+     */
+    private static void restore() {
+        final MutationLog.Replay<String> replay = log.replay(MutationLog.USER_PUT, MutationLog.USER_DELETE,
+                record -> record.getType() == MutationLog.USER_PUT
+                        ? record.getPayload(User.class).getUsername() : record.getPayload(String.class));
+        versions.set(Math.max(replay.getVersion(), versions.get()));
+        view.write(() -> {
+            Users restored = Users.EMPTY;
+            for (final MutationLog.Record record : replay.getRecords()) {
+                if (record.getType() == MutationLog.USER_PUT) {
+                    restored = restored.put(new Versioned<>(record.getPayload(User.class), record.getVersion()));
+                }
+            }
+            return install(restored);
+        }, installed -> log.queued());
+    }
+
+    /**
+     * Writes the users of the newest version of the indexes, and the version sequence.
+     */
+    static void snapshot(final SnapshotFile.Writer writer) throws IOException {
+        // the indexes may already hold writes made after the log was rotated, but their log records come later
+        // on replay and carry the same versions
+        final Users current = users.get();
+        writer.writeSequence(MutationLog.USER_PUT, versions.get());
+        for (final Versioned<User> user : current.byName) {
+            writer.write(MutationLog.USER_PUT, user.getVersion(), user.getValue());
+        }
     }
 
     public static User createUser(final long id, final String username, final String firstName,
@@ -87,4 +259,66 @@ public class UserData {
         user.setUserStatus(userStatus);
         return user;
     }
-}
\ No newline at end of file
+
+    /**
+     * One immutable version of the users, indexed by username and by id. The id index holds the user most
+     * recently stored with each id, like the username index holds the one most recently stored with each name.
+     */
+    private static final class Users {
+        private static final Users EMPTY = new Users(StringTrieMap.empty(), LongTrieMap.empty());
+
+        private final StringTrieMap<Versioned<User>> byName;
+        private final LongTrieMap<Versioned<User>> byId;
+
+        private Users(final StringTrieMap<Versioned<User>> byName, final LongTrieMap<Versioned<User>> byId) {
+            this.byName = byName;
+            this.byId = byId;
+        }
+
+        private Users put(final Versioned<User> stored) {
+            final User user = stored.getValue();
+            final Users released = remove(user.getUsername());
+            return new Users(released.byName.plus(user.getUsername(), stored),
+                    released.byId.plus(user.getId(), stored));
+        }
+
+        /**
+         * Stores users with distinct usernames at one version, as if put one at a time in order.
+         */
+        private Users putAll(final Collection<User> users, final long version) {
+            final Map<String, Versioned<User>> names = new HashMap<>(users.size() * 2);
+            final Map<Long, Versioned<User>> ids = new HashMap<>(users.size() * 2);
+            LongTrieMap<Versioned<User>> released = byId;
+            for (final User user : users) {
+                final Versioned<User> stored = new Versioned<>(user, version);
+                names.put(user.getUsername(), stored);
+                ids.put(user.getId(), stored);
+                final Versioned<User> existing = byName.get(user.getUsername());
+                if (existing != null && released.get(existing.getValue().getId()) == existing) {
+                    released = released.minus(existing.getValue().getId());
+                }
+            }
+
+            final long[] sortedIds = new long[ids.size()];
+            int n = 0;
+            for (final long id : ids.keySet()) {
+                sortedIds[n++] = id;
+            }
+            Arrays.sort(sortedIds);
+            final Object[] values = new Object[sortedIds.length];
+            for (int i = 0; i < sortedIds.length; i++) {
+                values[i] = ids.get(sortedIds[i]);
+            }
+            return new Users(byName.plusAll(names), released.plusAll(sortedIds, values, sortedIds.length));
+        }
+
+        private Users remove(final String username) {
+            final Versioned<User> existing = byName.get(username);
+            if (existing == null) {
+                return this;
+            }
+            final long id = existing.getValue().getId();
+            return new Users(byName.minus(username), byId.get(id) == existing ? byId.minus(id) : byId);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.data;
+
+import io.swagger.petstore.model.User;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Storage for users, keyed by username and versioned like {@link PetRepository}. {@link Repositories} picks the
+ * implementation.
+ */
+public interface UserRepository {
+    User findUserByName(String username);
+
+    Versioned<User> findVersionedUserByName(String username);
+
+    User findUserById(long id);
+
+    /**
+     * Lazily walks every user as of the call, however long the caller takes to consume it.
+     */
+    Iterator<User> iterateUsers();
+
+    Versioned<User> addUser(User user);
+
+    /**
+     * Stores the users as one update: readers see either none or all of them, and they share one version. A
+     * username listed more than once is stored as its last occurrence.
+     *
+     * @return the version the users were stored at
+     */
+    long addUsers(List<User> users);
+
+    /**
+     * Replaces the user stored under the given username if it is still at the expected version. The
+     * replacement may carry a different username, which must not be taken by another user.
+     *
+     * @return the stored user, or null if the user is gone or was changed in the meantime, or the new name is
+     * taken
+     */
+    Versioned<User> replaceUser(String username, User user, long expectedVersion);
+
+    void deleteUser(String username);
+
+    /**
+     * Deletes the user only if it is still at the expected version.
+     *
+     * @return false if the user is gone or was changed in the meantime
+     */
+    boolean deleteUser(String username, long expectedVersion);
+}
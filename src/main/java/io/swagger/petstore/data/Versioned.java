@@ -0,0 +1,52 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.data;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A stored entity together with the version it was written at. Versions come from a store-wide
+ * sequence, so a version is never reused even when an entity is deleted and created again. The sequence
+ * starts from the clock, so it is not reused by a later run either; see {@link #startingVersion()}.
+ */
+public final class Versioned<T> {
+    private final T value;
+    private final long version;
+
+    public Versioned(final T value, final long version) {
+        this.value = value;
+        this.version = version;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * The version of a store nothing was written to yet in this process: the clock in microseconds, like the
+     * {@link ChangeFeed} sequence. Unless a run handed out more than one version a microsecond, every version of
+     * this run is higher than those of the runs before, so an entity tag or expected version kept from one of them
+     * never names an entity of this run, even where the stores start from scratch on every boot.
+     */
+    static long startingVersion() {
+        return TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    }
+}
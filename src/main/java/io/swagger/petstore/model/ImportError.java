@@ -0,0 +1,52 @@
+/**
+ *  Copyright 2018 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.swagger.petstore.model;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement(name = "ImportError")
+public class ImportError {
+    private long line;
+    private String message;
+
+    public ImportError() {
+    }
+
+    public ImportError(final long line, final String message) {
+        this.line = line;
+        this.message = message;
+    }
+
+    @XmlElement(name = "line")
+    public long getLine() {
+        return line;
+    }
+
+    public void setLine(final long line) {
+        this.line = line;
+    }
+
+    @XmlElement(name = "message")
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(final String message) {
+        this.message = message;
+    }
+}
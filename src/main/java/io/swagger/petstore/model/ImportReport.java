@@ -0,0 +1,58 @@
+/**
+ *  Copyright 2018 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.swagger.petstore.model;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
+import javax.xml.bind.annotation.XmlRootElement;
+import java.util.ArrayList;
+import java.util.List;
+
+@XmlRootElement(name = "ImportReport")
+public class ImportReport {
+    private long imported;
+    private long failed;
+    private List<ImportError> errors = new ArrayList<>();
+
+    @XmlElement(name = "imported")
+    public long getImported() {
+        return imported;
+    }
+
+    public void setImported(final long imported) {
+        this.imported = imported;
+    }
+
+    @XmlElement(name = "failed")
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(final long failed) {
+        this.failed = failed;
+    }
+
+    @XmlElementWrapper(name = "errors")
+    @XmlElement(name = "error")
+    public List<ImportError> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(final List<ImportError> errors) {
+        this.errors = errors;
+    }
+}
@@ -42,6 +42,13 @@ public class Pet {
         this.id = id;
     }
 
+    /**
+     * Whether an id was given; {@link #getId()} cannot tell, as it unboxes.
+     */
+    public boolean hasId() {
+        return id != null;
+    }
+
     @XmlElement(name = "category")
     public Category getCategory() {
         return category;
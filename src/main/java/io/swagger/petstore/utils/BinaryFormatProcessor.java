@@ -0,0 +1,92 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.utils;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.oas.inflector.controllers.OpenAPIOperationController;
+import io.swagger.oas.inflector.converters.ConversionException;
+import io.swagger.oas.inflector.models.ApiError;
+import io.swagger.oas.inflector.processors.EntityProcessor;
+import io.swagger.oas.inflector.utils.ApiException;
+import io.swagger.oas.inflector.validators.ValidationError;
+import io.swagger.oas.inflector.validators.ValidationMessage;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Reads request bodies sent in one of the {@link BinaryFormats}, once {@link EntityProcessors} has registered it.
+ * A body that does not decode to the expected type is refused like a malformed JSON one.
+ */
+public class BinaryFormatProcessor implements EntityProcessor {
+
+    @Override
+    public boolean supports(final MediaType mediaType) {
+        return BinaryFormats.isBinary(mediaType);
+    }
+
+    @Override
+    public List<MediaType> getSupportedMediaTypes() {
+        return BinaryFormats.TYPES;
+    }
+
+    @Override
+    public void enableType(final MediaType mediaType) {
+    }
+
+    @Override
+    public Object process(final MediaType mediaType, final InputStream entityStream, final Class<?> cls)
+            throws ConversionException {
+        final ObjectMapper mapper = BinaryFormats.mapper(mediaType);
+        if (mapper == null || cls == null) {
+            return null;
+        }
+        try {
+            return mapper.readValue(entityStream, cls);
+        } catch (IOException e) {
+            throw new ConversionException().message(new ValidationMessage()
+                    .code(ValidationError.UNACCEPTABLE_VALUE)
+                    .message("unable to convert input to " + cls.getCanonicalName()));
+        }
+    }
+
+    @Override
+    public Object process(final MediaType mediaType, final InputStream entityStream, final Class<?> cls,
+                          final OpenAPIOperationController controller) throws ConversionException {
+        return process(mediaType, entityStream, cls);
+    }
+
+    @Override
+    public Object process(final MediaType mediaType, final InputStream entityStream, final JavaType javaType) {
+        final ObjectMapper mapper = BinaryFormats.mapper(mediaType);
+        if (mapper == null || javaType == null) {
+            return null;
+        }
+        try {
+            return mapper.readValue(entityStream, javaType);
+        } catch (IOException e) {
+            // this overload cannot throw ConversionException; ApiException is refused with the same status
+            throw new ApiException(new ApiError()
+                    .code(Response.Status.BAD_REQUEST.getStatusCode())
+                    .message("unable to convert input to " + javaType.toCanonical()), e);
+        }
+    }
+}
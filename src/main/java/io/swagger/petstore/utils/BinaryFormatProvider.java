@@ -0,0 +1,67 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Writes response entities in the {@link BinaryFormats} the client asked for. Bodies that are already bytes or
+ * streams are left to the providers that write them as they are.
+ */
+@Provider
+@Produces({"application/cbor", "application/x-jackson-smile", "application/x-msgpack"})
+public class BinaryFormatProvider implements MessageBodyWriter<Object> {
+
+    @Override
+    public boolean isWriteable(final Class<?> type, final Type genericType, final Annotation[] annotations,
+                               final MediaType mediaType) {
+        return BinaryFormats.isBinary(mediaType) && type != byte[].class
+                && !InputStream.class.isAssignableFrom(type) && !StreamingOutput.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(final Object value, final Class<?> type, final Type genericType,
+                        final Annotation[] annotations, final MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(final Object value, final Class<?> type, final Type genericType,
+                        final Annotation[] annotations, final MediaType mediaType,
+                        final MultivaluedMap<String, Object> httpHeaders, final OutputStream entityStream)
+            throws IOException {
+        final ObjectMapper mapper = BinaryFormats.mapper(mediaType);
+        final JsonGenerator generator = mapper.getFactory().createGenerator(entityStream);
+        // the container closes the response stream
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        mapper.writeValue(generator, value);
+        generator.close();
+    }
+}
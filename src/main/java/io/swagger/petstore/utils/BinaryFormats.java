@@ -0,0 +1,66 @@
+package io.swagger.petstore.utils;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import javax.ws.rs.core.MediaType;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The binary encodings of the JSON data model that entities can be sent and received in: CBOR, Smile and
+ * MessagePack. They carry the same fields as JSON, written by mappers set up like the JSON one, so an entity
+ * reads back the same whichever of them it was sent in; they only skip the text parsing and formatting.
+ */
+public final class BinaryFormats {
+    public static final MediaType APPLICATION_CBOR_TYPE = new MediaType("application", "cbor");
+    public static final MediaType APPLICATION_SMILE_TYPE = new MediaType("application", "x-jackson-smile");
+    public static final MediaType APPLICATION_MSGPACK_TYPE = new MediaType("application", "x-msgpack");
+
+    public static final List<MediaType> TYPES = Collections.unmodifiableList(Arrays.asList(
+            APPLICATION_CBOR_TYPE, APPLICATION_SMILE_TYPE, APPLICATION_MSGPACK_TYPE));
+
+    private static final ObjectMapper CBOR = mapper(new CBORFactory());
+    private static final ObjectMapper SMILE = mapper(new SmileFactory());
+    private static final ObjectMapper MSGPACK = mapper(new MessagePackFactory());
+
+    private BinaryFormats() {
+    }
+
+    public static boolean isBinary(final MediaType mediaType) {
+        return mapper(mediaType) != null;
+    }
+
+    /**
+     * The mapper for the given media type, or null if it is not one of the binary formats.
+     */
+    public static ObjectMapper mapper(final MediaType mediaType) {
+        if (mediaType == null || !"application".equalsIgnoreCase(mediaType.getType())) {
+            return null;
+        }
+        final String subtype = mediaType.getSubtype();
+        if (APPLICATION_CBOR_TYPE.getSubtype().equalsIgnoreCase(subtype)) {
+            return CBOR;
+        }
+        if (APPLICATION_SMILE_TYPE.getSubtype().equalsIgnoreCase(subtype)) {
+            return SMILE;
+        }
+        return APPLICATION_MSGPACK_TYPE.getSubtype().equalsIgnoreCase(subtype) ? MSGPACK : null;
+    }
+
+    private static ObjectMapper mapper(final JsonFactory factory) {
+        // the settings of the JSON mapper, so the formats agree on which fields are written and how
+        return new ObjectMapper(factory)
+                .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
+                .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    }
+}
@@ -0,0 +1,252 @@
+package io.swagger.petstore.utils;
+
+import io.swagger.oas.inflector.models.RequestContext;
+
+import javax.ws.rs.core.HttpHeaders;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Picks the response content coding from the Accept-Encoding header and compresses bodies in it. gzip and deflate
+ * can be produced, gzip preferred when the client accepts both equally. Bodies shorter than {@value
+ * #MIN_SIZE_PROPERTY} bytes (default {@value #DEFAULT_MIN_SIZE}) are not worth the CPU and go out as they are.
+ * <p>
+ * A Deflater holds a few hundred kilobytes of native memory that is costly to set up, so the ones released are
+ * kept for the next response, up to {@value #POOL_PROPERTY} of each kind (default twice the processors).
+ */
+public final class Compression {
+    public static final String MIN_SIZE_PROPERTY = "petstore.compression.min-size";
+    public static final String POOL_PROPERTY = "petstore.compression.pool";
+    public static final int DEFAULT_MIN_SIZE = 1024;
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    public static final int MIN_SIZE = Integer.getInteger(MIN_SIZE_PROPERTY, DEFAULT_MIN_SIZE);
+
+    private static final int POOL_SIZE = Integer.getInteger(POOL_PROPERTY,
+            2 * Runtime.getRuntime().availableProcessors());
+    private static final int BUFFER_SIZE = 8192;
+
+    // gzip wraps raw deflate data in its own header and trailer, the deflate coding is the zlib format
+    private static final ArrayBlockingQueue<Deflater> gzipDeflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final ArrayBlockingQueue<Deflater> zlibDeflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private static final int CACHE_SLOTS = 64;
+    private static final int MAX_CACHED_LENGTH = 256;
+
+    private static final AtomicReferenceArray<Resolved> cache = new AtomicReferenceArray<>(CACHE_SLOTS);
+
+    private Compression() {
+    }
+
+    public static String getEncoding(final RequestContext request) {
+        final List<String> accept = request.getHeaders().get(HttpHeaders.ACCEPT_ENCODING);
+        if (accept == null || accept.isEmpty()) {
+            return null;
+        }
+        return negotiate(accept.size() == 1 ? accept.get(0) : String.join(",", accept));
+    }
+
+    /**
+     * The coding with the highest q-value in the given Accept-Encoding header value, or null to send the body as
+     * it is.
+     */
+    public static String negotiate(final String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+        if (acceptEncoding.length() > MAX_CACHED_LENGTH) {
+            return resolve(acceptEncoding);
+        }
+        final int slot = (acceptEncoding.hashCode() & 0x7fffffff) % CACHE_SLOTS;
+        final Resolved cached = cache.get(slot);
+        if (cached != null && cached.acceptEncoding.equals(acceptEncoding)) {
+            return cached.encoding;
+        }
+        final String encoding = resolve(acceptEncoding);
+        cache.set(slot, new Resolved(acceptEncoding, encoding));
+        return encoding;
+    }
+
+    private static String resolve(final String acceptEncoding) {
+        float gzip = 0;
+        float deflate = 0;
+        float any = -1;
+        boolean gzipListed = false;
+        boolean deflateListed = false;
+        for (final String coding : acceptEncoding.split(",")) {
+            final String[] parts = coding.split(";");
+            final String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            final float q = quality(parts);
+            if (GZIP.equals(name) || "x-gzip".equals(name)) {
+                gzip = Math.max(gzip, q);
+                gzipListed = true;
+            } else if (DEFLATE.equals(name)) {
+                deflate = Math.max(deflate, q);
+                deflateListed = true;
+            } else if ("*".equals(name)) {
+                any = Math.max(any, q);
+            }
+        }
+        // * stands for the codings not listed by name
+        if (!gzipListed && any > 0) {
+            gzip = any;
+        }
+        if (!deflateListed && any > 0) {
+            deflate = any;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : null;
+    }
+
+    /**
+     * The q parameter of a coding, 1 without one, or 0 if it is malformed.
+     */
+    private static float quality(final String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            final String parameter = parts[i].trim();
+            if (parameter.length() > 1 && (parameter.charAt(0) == 'q' || parameter.charAt(0) == 'Q')
+                    && parameter.charAt(1) == '=') {
+                try {
+                    final float q = Float.parseFloat(parameter.substring(2).trim());
+                    return q >= 0 && q <= 1 ? q : 0;
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * The body compressed in the given coding.
+     */
+    public static byte[] compress(final byte[] body, final String encoding, final int level) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        final Encoder encoder = encoder(out, encoding, level);
+        try {
+            encoder.write(body);
+            encoder.finish();
+        } catch (IOException e) {
+            // a ByteArrayOutputStream does not throw
+            throw new UncheckedIOException(e);
+        } finally {
+            encoder.release();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * A stream that compresses what is written to it into the given stream. It must be released once done with,
+     * finished or not, and is not closed: closing the target is up to the caller.
+     */
+    public static Encoder encoder(final OutputStream out, final String encoding, final int level) {
+        final boolean gzip = GZIP.equals(encoding);
+        // only the default level is pooled; changing the level of a reused deflater costs more than it saves
+        final boolean pooled = level == Deflater.DEFAULT_COMPRESSION;
+        final Deflater reused = pooled ? (gzip ? gzipDeflaters : zlibDeflaters).poll() : null;
+        return new Encoder(out, reused != null ? reused : new Deflater(level, gzip), gzip, pooled);
+    }
+
+    public static final class Encoder extends DeflaterOutputStream {
+        private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+        private final boolean gzip;
+        private final boolean pooled;
+        private final CRC32 crc = new CRC32();
+        private boolean headerWritten;
+        private boolean finished;
+        private boolean released;
+
+        private Encoder(final OutputStream out, final Deflater deflater, final boolean gzip, final boolean pooled) {
+            // sync flush, so what was written so far can be pushed to the client
+            super(out, deflater, BUFFER_SIZE, true);
+            this.gzip = gzip;
+            this.pooled = pooled;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            writeHeader();
+            if (gzip) {
+                crc.update(b, off, len);
+            }
+            super.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeHeader();
+            super.flush();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            writeHeader();
+            super.finish();
+            if (gzip) {
+                writeInt((int) crc.getValue());
+                writeInt((int) def.getBytesRead());
+            }
+            finished = true;
+        }
+
+        /**
+         * Hands the deflater back for reuse. Nothing can be written afterwards.
+         */
+        public void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            if (!pooled) {
+                def.end();
+                return;
+            }
+            def.reset();
+            if (!(gzip ? gzipDeflaters : zlibDeflaters).offer(def)) {
+                def.end();
+            }
+        }
+
+        private void writeHeader() throws IOException {
+            if (gzip && !headerWritten) {
+                out.write(GZIP_HEADER);
+                headerWritten = true;
+            }
+        }
+
+        private void writeInt(final int value) throws IOException {
+            // the gzip trailer is little-endian
+            out.write(value & 0xff);
+            out.write(value >>> 8 & 0xff);
+            out.write(value >>> 16 & 0xff);
+            out.write(value >>> 24 & 0xff);
+        }
+    }
+
+    private static final class Resolved {
+        private final String acceptEncoding;
+        private final String encoding;
+
+        private Resolved(final String acceptEncoding, final String encoding) {
+            this.acceptEncoding = acceptEncoding;
+            this.encoding = encoding;
+        }
+    }
+}
@@ -0,0 +1,527 @@
+package io.swagger.petstore.utils;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import javax.ws.rs.core.HttpHeaders;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses responses in the coding the client accepts (see {@link Compression}). The first {@link
+ * Compression#MIN_SIZE} bytes of a body are held back: a body that ends before that goes out as it is, a longer
+ * one is compressed as it is written, so streamed responses stay streamed. Responses that already have a
+ * Content-Encoding, partial content and event streams are passed through.
+ * <p>
+ * The bodies of the paths in the {@value #PRECOMPRESSED_PARAMETER} init parameter do not change while the
+ * application runs, so they are compressed once, at the best level, and later requests for them are answered
+ * from memory without reaching the servlet.
+ */
+public class CompressionFilter implements Filter {
+    public static final String PRECOMPRESSED_PARAMETER = "precompressed";
+
+    private static final String VARY = "Vary";
+
+    private final ConcurrentHashMap<String, Precompressed> precompressed = new ConcurrentHashMap<>();
+    private Set<String> precompressedPaths = Collections.emptySet();
+
+    @Override
+    public void init(final FilterConfig config) {
+        final String paths = config.getInitParameter(PRECOMPRESSED_PARAMETER);
+        if (paths != null && !paths.trim().isEmpty()) {
+            precompressedPaths = new HashSet<>(Arrays.asList(paths.trim().split("[\\s,]+")));
+        }
+    }
+
+    @Override
+    public void doFilter(final ServletRequest req, final ServletResponse res, final FilterChain chain)
+            throws IOException, ServletException {
+        if (!(req instanceof HttpServletRequest) || !(res instanceof HttpServletResponse)) {
+            chain.doFilter(req, res);
+            return;
+        }
+        final HttpServletRequest request = (HttpServletRequest) req;
+        final HttpServletResponse response = (HttpServletResponse) res;
+        final String encoding = Compression.negotiate(acceptEncoding(request));
+
+        if (encoding != null && "GET".equals(request.getMethod()) && precompressedPaths.contains(path(request))) {
+            servePrecompressed(request, response, chain, encoding);
+            return;
+        }
+
+        final CompressingResponse compressing = new CompressingResponse(response, encoding);
+        try {
+            chain.doFilter(request, compressing);
+            compressing.finish();
+        } finally {
+            compressing.release();
+        }
+    }
+
+    private void servePrecompressed(final HttpServletRequest request, final HttpServletResponse response,
+                                    final FilterChain chain, final String encoding)
+            throws IOException, ServletException {
+        final String path = path(request);
+        Precompressed body = precompressed.get(path);
+        if (body == null) {
+            final CapturingResponse capturing = new CapturingResponse(response);
+            chain.doFilter(request, capturing);
+            final byte[] captured = capturing.captured();
+            if (capturing.getStatus() != HttpServletResponse.SC_OK || response.isCommitted()
+                    || response.containsHeader(HttpHeaders.CONTENT_ENCODING)
+                    || captured.length < Compression.MIN_SIZE) {
+                response.setContentLength(captured.length);
+                response.getOutputStream().write(captured);
+                return;
+            }
+            body = new Precompressed(response.getContentType(),
+                    Compression.compress(captured, Compression.GZIP, Deflater.BEST_COMPRESSION),
+                    Compression.compress(captured, Compression.DEFLATE, Deflater.BEST_COMPRESSION));
+            precompressed.putIfAbsent(path, body);
+        } else {
+            response.setContentType(body.contentType);
+        }
+
+        final byte[] compressed = Compression.GZIP.equals(encoding) ? body.gzip : body.deflate;
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+        response.addHeader(VARY, HttpHeaders.ACCEPT_ENCODING);
+        response.setContentLength(compressed.length);
+        response.getOutputStream().write(compressed);
+    }
+
+    @Override
+    public void destroy() {
+        precompressed.clear();
+    }
+
+    private static String acceptEncoding(final HttpServletRequest request) {
+        final String first = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (first == null) {
+            return null;
+        }
+        // repeated Accept-Encoding headers are one list
+        final String all = String.join(",", Collections.list(request.getHeaders(HttpHeaders.ACCEPT_ENCODING)));
+        return all.length() == first.length() ? first : all;
+    }
+
+    private static String path(final HttpServletRequest request) {
+        final String pathInfo = request.getPathInfo();
+        return pathInfo == null ? request.getServletPath() : request.getServletPath() + pathInfo;
+    }
+
+    private static boolean isContentLength(final String name) {
+        return HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+    }
+
+    private static boolean isEventStream(final String contentType) {
+        return contentType != null
+                && contentType.toLowerCase().startsWith(EventStream.TEXT_EVENT_STREAM_TYPE.toString());
+    }
+
+    private static final class Precompressed {
+        private final String contentType;
+        private final byte[] gzip;
+        private final byte[] deflate;
+
+        private Precompressed(final String contentType, final byte[] gzip, final byte[] deflate) {
+            this.contentType = contentType;
+            this.gzip = gzip;
+            this.deflate = deflate;
+        }
+    }
+
+    /**
+     * Holds back the start of the body and the Content-Length until it is known whether the body is long enough
+     * to compress.
+     */
+    private static final class CompressingResponse extends HttpServletResponseWrapper {
+        private final String encoding;
+        private final byte[] held = new byte[Compression.MIN_SIZE];
+        private int heldCount;
+        private long contentLength = -1;
+
+        // set once decided: the response stream itself, or an encoder writing to it
+        private OutputStream target;
+        private Compression.Encoder encoder;
+        private ServletOutputStream stream;
+        private PrintWriter writer;
+
+        private CompressingResponse(final HttpServletResponse response, final String encoding) {
+            super(response);
+            this.encoding = encoding;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            if (stream == null) {
+                stream = new Stream(this, super.getOutputStream());
+            }
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (stream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called");
+                }
+                final ServletOutputStream out = new Stream(this, super.getOutputStream());
+                writer = new PrintWriter(new OutputStreamWriter(out, getCharacterEncoding()));
+                stream = out;
+            }
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(final int length) {
+            setContentLengthLong(length);
+        }
+
+        @Override
+        public void setContentLengthLong(final long length) {
+            if (target == null) {
+                contentLength = length;
+            } else if (encoder == null) {
+                super.setContentLengthLong(length);
+            }
+        }
+
+        @Override
+        public void setHeader(final String name, final String value) {
+            if (isContentLength(name)) {
+                setContentLengthLong(value == null ? -1 : Long.parseLong(value.trim()));
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(final String name, final String value) {
+            if (isContentLength(name)) {
+                setContentLengthLong(Long.parseLong(value.trim()));
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setIntHeader(final String name, final int value) {
+            if (isContentLength(name)) {
+                setContentLengthLong(value);
+            } else {
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addIntHeader(final String name, final int value) {
+            if (isContentLength(name)) {
+                setContentLengthLong(value);
+            } else {
+                super.addIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target == null) {
+                decide(false);
+            }
+            target.flush();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            heldCount = 0;
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            heldCount = 0;
+            contentLength = -1;
+        }
+
+        private void write(final byte[] b, final int off, final int len) throws IOException {
+            if (target != null) {
+                target.write(b, off, len);
+            } else if (heldCount + len <= held.length) {
+                System.arraycopy(b, off, held, heldCount, len);
+                heldCount += len;
+            } else {
+                decide(true);
+                target.write(b, off, len);
+            }
+        }
+
+        private void flush() throws IOException {
+            if (target == null) {
+                if (heldCount == 0 || !isEventStream(getContentType())) {
+                    // flushing would commit the response before it is decided, and a body that ends while
+                    // still held goes out with its length; only events have to reach the client right away
+                    return;
+                }
+                decide(false);
+            }
+            target.flush();
+        }
+
+        /**
+         * Compresses from here on if the body is long enough and worth it, otherwise sends it as it is, and
+         * writes out what was held back.
+         */
+        private void decide(final boolean longEnough) throws IOException {
+            final HttpServletResponse response = (HttpServletResponse) getResponse();
+            final OutputStream out = response.getOutputStream();
+            if (isCompressible(response)) {
+                response.addHeader(VARY, HttpHeaders.ACCEPT_ENCODING);
+                if (encoding != null && (longEnough || heldCount >= held.length)) {
+                    response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+                    final String etag = response.getHeader(Util.ETAG);
+                    if (etag != null) {
+                        response.setHeader(Util.ETAG, Util.withCoding(etag, encoding));
+                    }
+                    encoder = Compression.encoder(out, encoding, Deflater.DEFAULT_COMPRESSION);
+                }
+            }
+            if (encoder == null && contentLength >= 0) {
+                response.setContentLengthLong(contentLength);
+            }
+            target = encoder != null ? encoder : out;
+            target.write(held, 0, heldCount);
+        }
+
+        private boolean isCompressible(final HttpServletResponse response) {
+            final int status = response.getStatus();
+            if (status < HttpServletResponse.SC_OK || status == HttpServletResponse.SC_NO_CONTENT
+                    || status == HttpServletResponse.SC_PARTIAL_CONTENT
+                    || status == HttpServletResponse.SC_NOT_MODIFIED) {
+                return false;
+            }
+            if (response.containsHeader(HttpHeaders.CONTENT_ENCODING) || response.containsHeader("Content-Range")) {
+                return false;
+            }
+            final String contentType = response.getContentType();
+            if (contentType == null) {
+                return false;
+            }
+            final String type = contentType.toLowerCase();
+            if (type.startsWith("text/")) {
+                // events have to reach the client as soon as they are flushed
+                return !isEventStream(type);
+            }
+            return type.contains("json") || type.contains("xml") || type.contains("yaml")
+                    || type.contains("javascript") || type.contains("cbor") || type.contains("smile")
+                    || type.contains("msgpack");
+        }
+
+        private void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target == null) {
+                if (heldCount == 0 && stream == null) {
+                    // no body was written, or it went past this wrapper
+                    if (contentLength >= 0) {
+                        super.setContentLengthLong(contentLength);
+                    }
+                    return;
+                }
+                decide(false);
+            }
+            if (encoder != null) {
+                encoder.finish();
+            }
+        }
+
+        private void release() {
+            if (encoder != null) {
+                encoder.release();
+            }
+        }
+    }
+
+    private static final class Stream extends ServletOutputStream {
+        private final CompressingResponse response;
+        private final ServletOutputStream out;
+        private boolean closed;
+
+        private Stream(final CompressingResponse response, final ServletOutputStream out) {
+            this.response = response;
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            response.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!closed) {
+                response.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            response.finish();
+            closed = true;
+            out.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return out.isReady();
+        }
+
+        @Override
+        public void setWriteListener(final WriteListener listener) {
+            out.setWriteListener(listener);
+        }
+    }
+
+    /**
+     * Holds back the whole body, and its Content-Length, to be compressed once and kept.
+     */
+    private static final class CapturingResponse extends HttpServletResponseWrapper {
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(1 << 16);
+        private ServletOutputStream stream;
+        private PrintWriter writer;
+
+        private CapturingResponse(final HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (stream == null) {
+                stream = new ServletOutputStream() {
+                    @Override
+                    public void write(final int b) {
+                        body.write(b);
+                    }
+
+                    @Override
+                    public void write(final byte[] b, final int off, final int len) {
+                        body.write(b, off, len);
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setWriteListener(final WriteListener listener) {
+                        throw new UnsupportedOperationException("The body is captured in memory");
+                    }
+                };
+            }
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(final int length) {
+        }
+
+        @Override
+        public void setContentLengthLong(final long length) {
+        }
+
+        @Override
+        public void setHeader(final String name, final String value) {
+            if (!isContentLength(name)) {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(final String name, final String value) {
+            if (!isContentLength(name)) {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setIntHeader(final String name, final int value) {
+            if (!isContentLength(name)) {
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addIntHeader(final String name, final int value) {
+            if (!isContentLength(name)) {
+                super.addIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() {
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            body.reset();
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            body.reset();
+        }
+
+        private byte[] captured() {
+            if (writer != null) {
+                writer.flush();
+            }
+            return body.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package io.swagger.petstore.utils;
+
+import io.swagger.oas.inflector.models.RequestContext;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Picks the response media type from the Accept header, honouring q-values and lists of ranges. JSON, XML, YAML
+ * and the {@link BinaryFormats} can be produced, preferred in that order when the client accepts several
+ * equally; JSON is also the answer when the client accepts none of them.
+ * <p>
+ * Resolved types are cached per header value in a fixed number of slots chosen by the value's hash, so a
+ * header seen before is resolved without parsing or allocating, and a stream of distinct headers can only
+ * replace entries, never grow the cache.
+ */
+public final class ContentNegotiation {
+    public static final MediaType APPLICATION_YAML_TYPE = new MediaType("application", "yaml");
+
+    // the types that can be produced, in order of preference
+    private static final MediaType[] PRODUCED = {
+            MediaType.APPLICATION_JSON_TYPE, MediaType.APPLICATION_XML_TYPE, APPLICATION_YAML_TYPE,
+            BinaryFormats.APPLICATION_CBOR_TYPE, BinaryFormats.APPLICATION_SMILE_TYPE,
+            BinaryFormats.APPLICATION_MSGPACK_TYPE};
+
+    private static final int CACHE_SLOTS = 512;
+    private static final int MAX_CACHED_LENGTH = 1024;
+
+    private static final AtomicReferenceArray<Resolved> cache = new AtomicReferenceArray<>(CACHE_SLOTS);
+
+    private ContentNegotiation() {
+    }
+
+    public static MediaType getMediaType(final RequestContext request) {
+        final List<String> accept = request.getHeaders().get(HttpHeaders.ACCEPT);
+        if (accept == null || accept.isEmpty()) {
+            return MediaType.APPLICATION_JSON_TYPE;
+        }
+        // repeated Accept headers are one list
+        return negotiate(accept.size() == 1 ? accept.get(0) : String.join(",", accept));
+    }
+
+    /**
+     * The produced type with the highest q-value in the given Accept header value.
+     */
+    public static MediaType negotiate(final String accept) {
+        if (accept == null || accept.isEmpty()) {
+            return MediaType.APPLICATION_JSON_TYPE;
+        }
+        if (accept.length() > MAX_CACHED_LENGTH) {
+            return resolve(accept);
+        }
+        final int slot = (accept.hashCode() & 0x7fffffff) % CACHE_SLOTS;
+        final Resolved cached = cache.get(slot);
+        if (cached != null && cached.accept.equals(accept)) {
+            return cached.type;
+        }
+        final MediaType type = resolve(accept);
+        cache.set(slot, new Resolved(accept, type));
+        return type;
+    }
+
+    private static MediaType resolve(final String accept) {
+        final float[] quality = new float[PRODUCED.length];
+        final int[] specificity = new int[PRODUCED.length];
+        for (final String range : accept.split(",")) {
+            final String[] parts = range.split(";");
+            final String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            final int slash = name.indexOf('/');
+            if (slash <= 0 || slash == name.length() - 1) {
+                continue;
+            }
+            final String type = name.substring(0, slash);
+            final String subtype = name.substring(slash + 1);
+            final float q = quality(parts);
+            if (q < 0) {
+                continue;
+            }
+
+            for (int i = 0; i < PRODUCED.length; i++) {
+                // the most specific matching range sets the q-value, whatever its position in the list
+                final int match = match(PRODUCED[i], type, subtype);
+                if (match > specificity[i] || match == specificity[i] && match > 0 && q > quality[i]) {
+                    specificity[i] = match;
+                    quality[i] = q;
+                }
+            }
+        }
+
+        int best = 0;
+        for (int i = 1; i < PRODUCED.length; i++) {
+            if (quality[i] > quality[best]) {
+                best = i;
+            }
+        }
+        return quality[best] > 0 ? PRODUCED[best] : MediaType.APPLICATION_JSON_TYPE;
+    }
+
+    /**
+     * 3 for an exact match, 2 for type/*, 1 for *&#47;*, 0 for none.
+     */
+    private static int match(final MediaType produced, final String type, final String subtype) {
+        if ("*".equals(type)) {
+            return "*".equals(subtype) ? 1 : 0;
+        }
+        if (!produced.getType().equals(type)) {
+            return 0;
+        }
+        if ("*".equals(subtype)) {
+            return 2;
+        }
+        return produced.getSubtype().equals(subtype) ? 3 : 0;
+    }
+
+    /**
+     * The q parameter of a range, 1 without one, or -1 if it is malformed and the range is to be ignored.
+     */
+    private static float quality(final String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            final String parameter = parts[i].trim();
+            if (parameter.length() > 1 && (parameter.charAt(0) == 'q' || parameter.charAt(0) == 'Q')
+                    && parameter.charAt(1) == '=') {
+                try {
+                    final float q = Float.parseFloat(parameter.substring(2).trim());
+                    return q >= 0 && q <= 1 ? q : -1;
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static final class Resolved {
+        private final String accept;
+        private final MediaType type;
+
+        private Resolved(final String accept, final MediaType type) {
+            this.accept = accept;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.utils;
+
+import io.swagger.oas.inflector.processors.EntityProcessorFactory;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Registers the request body processors of this application with the inflector once, when the application
+ * starts, before the inflector servlet reads any request.
+ */
+public class EntityProcessors implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(final ServletContextEvent event) {
+        // passes import bodies through unread; the default processors would buffer them whole
+        EntityProcessorFactory.addProcessor(NdjsonProcessor.class, NdjsonProcessor.APPLICATION_NDJSON_TYPE);
+        for (final MediaType type : BinaryFormats.TYPES) {
+            EntityProcessorFactory.addProcessor(BinaryFormatProcessor.class, type);
+        }
+    }
+
+    @Override
+    public void contextDestroyed(final ServletContextEvent event) {
+    }
+}
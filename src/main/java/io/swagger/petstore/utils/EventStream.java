@@ -0,0 +1,78 @@
+package io.swagger.petstore.utils;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.swagger.petstore.data.ChangeFeed;
+import io.swagger.v3.core.util.Json;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes change feed events to the response stream as Server-Sent Events until the client goes away or falls
+ * so far behind that events were lost, in which case a final resync event tells it where to resume after
+ * reloading. Events already published are written back to back and flushed together; a comment line is sent
+ * when the feed is idle so dead connections are noticed.
+ */
+public class EventStream implements StreamingOutput {
+    public static final MediaType TEXT_EVENT_STREAM_TYPE = new MediaType("text", "event-stream");
+
+    private static final long HEARTBEAT_SECONDS = 15;
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final ChangeFeed.Cursor cursor;
+
+    public EventStream(final ChangeFeed.Cursor cursor) {
+        this.cursor = cursor;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        output.write(HEARTBEAT);
+        while (true) {
+            ChangeFeed.Event event = cursor.poll();
+            if (event == null) {
+                output.flush();
+                event = cursor.next(HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+            }
+            if (event == null) {
+                output.write(HEARTBEAT);
+            } else {
+                writeEvent(output, event, data);
+                if (event.isResync()) {
+                    output.flush();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void writeEvent(final OutputStream output, final ChangeFeed.Event event,
+                                   final ByteArrayOutputStream data) throws IOException {
+        data.reset();
+        final JsonGenerator generator = Json.mapper().getFactory().createGenerator(data, JsonEncoding.UTF8);
+        generator.writeStartObject();
+        if (event.isResync()) {
+            generator.writeNumberField("after", event.getSequence());
+        } else {
+            generator.writeStringField("op", event.getOperation());
+            generator.writeObjectField("key", event.getKey());
+            generator.writeNumberField("version", event.getVersion());
+        }
+        generator.writeEndObject();
+        generator.close();
+
+        final String name = event.isResync() ? "resync" : event.getEntity();
+        output.write(("id: " + event.getSequence() + "\nevent: " + name + "\ndata: ")
+                .getBytes(StandardCharsets.UTF_8));
+        data.writeTo(output);
+        output.write('\n');
+        output.write('\n');
+    }
+}
@@ -0,0 +1,158 @@
+package io.swagger.petstore.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the outcome of recent requests by their idempotency key, so a retried request gets the first
+ * outcome back instead of being carried out again. At most capacity keys are kept, each for the time to live;
+ * when full, the oldest finished key is dropped early, so memory stays fixed however fast keys arrive. Keys of
+ * requests still running are never dropped, since a retry would then run the request a second time; a new key
+ * is refused instead while every kept key is running. A retry that arrives while the first request is still
+ * running waits for it, up to the given wait.
+ */
+public class IdempotencyCache<V> {
+    private final int capacity;
+    private final long ttlNanos;
+    private final long waitNanos;
+
+    // insertion order is creation order, so expired entries are always at the head
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>();
+
+    public IdempotencyCache(final int capacity, final long ttl, final long wait, final TimeUnit unit) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.waitNanos = unit.toNanos(wait);
+    }
+
+    /**
+     * Runs the action unless the key was seen within the time to live, in which case the first outcome is
+     * returned. An action that throws leaves no trace, so the request can be retried with the same key, and
+     * retries that were waiting for it run the action themselves.
+     *
+     * @param request what identifies the request apart from its key; a key reused for a different request is
+     *                refused
+     * @throws IllegalStateException      if the key was last used for a different request
+     * @throws RejectedExecutionException if the cache is full of running requests, or the first request with
+     *                                    the key is still running after the wait
+     */
+    public Outcome<V> execute(final String key, final Object request, final Supplier<V> action) {
+        final Entry<V> entry;
+        final boolean first;
+        synchronized (entries) {
+            final long now = System.nanoTime();
+            expire(now);
+            final Entry<V> existing = entries.get(key);
+            first = existing == null;
+            if (first) {
+                if (entries.size() >= capacity && !evictFinished()) {
+                    throw new RejectedExecutionException("Too many requests are running");
+                }
+                entry = new Entry<>(request, now);
+                entries.put(key, entry);
+            } else {
+                entry = existing;
+            }
+        }
+
+        if (!Objects.equals(entry.request, request)) {
+            throw new IllegalStateException("Idempotency key " + key + " was used for a different request");
+        }
+        if (!first) {
+            try {
+                return new Outcome<>(entry.outcome.get(waitNanos, TimeUnit.NANOSECONDS), true);
+            } catch (ExecutionException e) {
+                // the first request failed and released the key; this one takes its place
+                return execute(key, request, action);
+            } catch (TimeoutException e) {
+                throw new RejectedExecutionException("The first request with this key is still running");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for the first request", e);
+            }
+        }
+
+        final V value;
+        try {
+            value = action.get();
+        } catch (RuntimeException | Error e) {
+            synchronized (entries) {
+                entries.remove(key, entry);
+            }
+            entry.outcome.completeExceptionally(e);
+            throw e;
+        }
+        entry.outcome.complete(value);
+        return new Outcome<>(value, false);
+    }
+
+    private void expire(final long now) {
+        final Iterator<Entry<V>> oldest = entries.values().iterator();
+        while (oldest.hasNext()) {
+            final Entry<V> entry = oldest.next();
+            if (now - entry.created < ttlNanos) {
+                return;
+            }
+            if (entry.outcome.isDone()) {
+                oldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops the oldest finished entry. Only requests in progress can be ahead of it, and there are no more of
+     * those than threads serving requests, so the scan stays short.
+     */
+    private boolean evictFinished() {
+        final Iterator<Entry<V>> oldest = entries.values().iterator();
+        while (oldest.hasNext()) {
+            if (oldest.next().outcome.isDone()) {
+                oldest.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Entry<V> {
+        private final Object request;
+        private final long created;
+        private final CompletableFuture<V> outcome = new CompletableFuture<>();
+
+        private Entry(final Object request, final long created) {
+            this.request = request;
+            this.created = created;
+        }
+    }
+
+    /**
+     * The value of a request, and whether it was replayed from an earlier request with the same key.
+     */
+    public static final class Outcome<V> {
+        private final V value;
+        private final boolean replayed;
+
+        private Outcome(final V value, final boolean replayed) {
+            this.value = value;
+            this.replayed = replayed;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public boolean isReplayed() {
+            return replayed;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.utils;
+
+import com.fasterxml.jackson.databind.JavaType;
+import io.swagger.oas.inflector.controllers.OpenAPIOperationController;
+import io.swagger.oas.inflector.processors.EntityProcessor;
+
+import javax.ws.rs.core.MediaType;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hands a newline-delimited JSON request body to the controller as the unread request stream. The built-in
+ * binary processor would buffer the whole body first, which rules out importing files larger than the heap.
+ */
+public class NdjsonProcessor implements EntityProcessor {
+    public static final MediaType APPLICATION_NDJSON_TYPE = new MediaType("application", "x-ndjson");
+
+    @Override
+    public boolean supports(final MediaType mediaType) {
+        return APPLICATION_NDJSON_TYPE.isCompatible(mediaType);
+    }
+
+    @Override
+    public List<MediaType> getSupportedMediaTypes() {
+        return Collections.singletonList(APPLICATION_NDJSON_TYPE);
+    }
+
+    @Override
+    public void enableType(final MediaType mediaType) {
+    }
+
+    @Override
+    public Object process(final MediaType mediaType, final InputStream entityStream, final Class<?> cls) {
+        return cls != null && cls.isAssignableFrom(InputStream.class) ? entityStream : null;
+    }
+
+    @Override
+    public Object process(final MediaType mediaType, final InputStream entityStream, final Class<?> cls,
+                          final OpenAPIOperationController controller) {
+        return process(mediaType, entityStream, cls);
+    }
+
+    @Override
+    public Object process(final MediaType mediaType, final InputStream entityStream, final JavaType javaType) {
+        return process(mediaType, entityStream, javaType == null ? null : javaType.getRawClass());
+    }
+}
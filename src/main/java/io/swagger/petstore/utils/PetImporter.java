@@ -0,0 +1,190 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.swagger.petstore.data.PetData;
+import io.swagger.petstore.data.PetRepository;
+import io.swagger.petstore.model.ImportError;
+import io.swagger.petstore.model.ImportReport;
+import io.swagger.petstore.model.Pet;
+import io.swagger.v3.core.util.Json;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Imports pets from newline-delimited JSON, one pet per line, optionally gzipped. The input is read through a
+ * fixed buffer and each line is handed to the Jackson parser in place, so memory use depends on the batch size
+ * and the longest line, not on the size of the input. Valid pets are stored in batches, each as one repository
+ * update; a line that does not hold a valid pet is reported with its line number and skipped.
+ */
+public class PetImporter {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int MAX_BATCH_SIZE = 10000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    private static final ObjectReader LINE_READER = Json.mapper().readerFor(Pet.class);
+
+    private final PetRepository pets;
+    private final int batchSize;
+    private final List<Pet> batch;
+    private final ImportReport report = new ImportReport();
+
+    public PetImporter(final PetRepository pets, final int batchSize) {
+        this.pets = pets;
+        this.batchSize = batchSize;
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Reads the input to its end. Batches stored before a read error stay stored.
+     *
+     * @throws IOException if the input cannot be read or is not valid gzip
+     */
+    public ImportReport importFrom(final InputStream body) throws IOException {
+        final InputStream in = decompressed(body);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int start = 0;
+        int end = 0;
+        int scanned = 0;
+        long line = 0;
+        boolean skipping = false;
+
+        while (true) {
+            int newline = -1;
+            for (int i = scanned; i < end; i++) {
+                if (buffer[i] == '\n') {
+                    newline = i;
+                    break;
+                }
+            }
+            if (newline >= 0) {
+                line++;
+                if (!skipping) {
+                    parse(buffer, start, newline, line);
+                }
+                skipping = false;
+                start = newline + 1;
+                scanned = start;
+                continue;
+            }
+
+            // no complete line left in the buffer: keep the partial line and read more
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+            if (end == buffer.length) {
+                if (buffer.length < MAX_LINE_LENGTH) {
+                    final byte[] grown = new byte[Math.min(buffer.length * 2, MAX_LINE_LENGTH)];
+                    System.arraycopy(buffer, 0, grown, 0, end);
+                    buffer = grown;
+                } else {
+                    if (!skipping) {
+                        fail(line + 1, "Line is longer than " + MAX_LINE_LENGTH + " bytes");
+                        skipping = true;
+                    }
+                    end = 0;
+                }
+            }
+            scanned = end;
+            final int read = in.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                break;
+            }
+            end += read;
+        }
+        if (end > start && !skipping) {
+            parse(buffer, start, end, line + 1);
+        }
+        flush();
+        return report;
+    }
+
+    private void parse(final byte[] buffer, final int from, final int to, final long line) {
+        int end = to;
+        while (end > from && Character.isWhitespace(buffer[end - 1])) {
+            end--;
+        }
+        if (end == from) {
+            return;
+        }
+
+        final Pet parsed;
+        try (JsonParser parser = LINE_READER.getFactory().createParser(buffer, from, end - from)) {
+            parsed = LINE_READER.readValue(parser);
+            if (parser.nextToken() != null) {
+                fail(line, "Expected one pet per line");
+                return;
+            }
+        } catch (JsonProcessingException e) {
+            fail(line, e.getOriginalMessage());
+            return;
+        } catch (IOException e) {
+            fail(line, e.getMessage());
+            return;
+        }
+        if (parsed == null) {
+            fail(line, "Expected a pet object");
+        } else if (!parsed.hasId()) {
+            fail(line, "Pet has no id");
+        } else if (parsed.getName() == null) {
+            fail(line, "Pet has no name");
+        } else {
+            batch.add(PetData.createPet(parsed.getId(), parsed.getCategory(), parsed.getName(),
+                    parsed.getPhotoUrls(), parsed.getTags(), parsed.getStatus()));
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        pets.addPets(batch);
+        report.setImported(report.getImported() + batch.size());
+        batch.clear();
+    }
+
+    private void fail(final long line, final String message) {
+        report.setFailed(report.getFailed() + 1);
+        if (report.getErrors().size() < MAX_REPORTED_ERRORS) {
+            report.getErrors().add(new ImportError(line, message));
+        }
+    }
+
+    private static InputStream decompressed(final InputStream body) throws IOException {
+        final InputStream in = new BufferedInputStream(body, BUFFER_SIZE);
+        in.mark(2);
+        final boolean gzip = in.read() == 0x1f && in.read() == 0x8b;
+        in.reset();
+        return gzip ? new GZIPInputStream(in, BUFFER_SIZE) : in;
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2018 SmartBear Software
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.swagger.petstore.utils;
+
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Runs the action a controller left with {@link #onFinish} once Jersey is done with the request, whether the
+ * response was written in full, the client went away while it was, or it was never written at all.
+ */
+@Provider
+public class RequestCompletion implements ApplicationEventListener {
+    private static final String PROPERTY = RequestCompletion.class.getName();
+
+    private static final RequestEventListener FINISHED = event -> {
+        if (event.getType() == RequestEvent.Type.FINISHED) {
+            final Object action = event.getContainerRequest().getProperty(PROPERTY);
+            if (action instanceof Runnable) {
+                ((Runnable) action).run();
+            }
+        }
+    };
+
+    /**
+     * Runs the action when the request is finished. One action per request.
+     */
+    public static void onFinish(final ContainerRequestContext request, final Runnable action) {
+        request.setProperty(PROPERTY, action);
+    }
+
+    @Override
+    public void onEvent(final ApplicationEvent event) {
+    }
+
+    @Override
+    public RequestEventListener onRequest(final RequestEvent event) {
+        return FINISHED;
+    }
+}
@@ -0,0 +1,264 @@
+package io.swagger.petstore.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import io.swagger.oas.inflector.models.RequestContext;
+import io.swagger.oas.inflector.models.ResponseContext;
+import io.swagger.petstore.data.Versioned;
+import io.swagger.v3.core.util.Json;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * Encoded response bodies of single entities, kept per entity and media type together with the version of the
+ * entity they were encoded from. A body is served again only while the entity is still at that version, so
+ * a mutation invalidates it without being told about it. The bytes match what the json, xml and yaml entity
+ * processors and the {@link BinaryFormatProvider} write for the entity. A body long enough to be compressed
+ * (see {@link Compression}) is also kept compressed in each coding once a client has asked for it, so a popular
+ * entity is not compressed on every read.
+ * <p>
+ * The bodies held, compressed ones included, add up to at most {@value #SIZE_PROPERTY} bytes (default {@value
+ * #DEFAULT_SIZE}, 0 disables). Beyond that, bodies are evicted in insertion order, except that one read since it
+ * was last passed over gets another round, so the popular ones stay.
+ */
+public final class ResponseCache {
+    public static final String SIZE_PROPERTY = "petstore.responses.cache.bytes";
+    public static final long DEFAULT_SIZE = 32L << 20;
+
+    private static final int JSON = 0;
+    private static final int XML = 1;
+    private static final int YAML = 2;
+    private static final int CBOR = 3;
+    private static final int SMILE = 4;
+    private static final int MSGPACK = 5;
+
+    // a body larger than this share of the cache would evict too many others
+    private static final int MAX_ENTRY_SHARE = 64;
+
+    private static final ObjectWriter JSON_WRITER = Json.mapper().writer();
+    private static final ObjectWriter YAML_WRITER = new YAMLMapper().writer();
+    private static final ConcurrentHashMap<Class<?>, JAXBContext> JAXB_CONTEXTS = new ConcurrentHashMap<>();
+
+    private static final ResponseCache INSTANCE = new ResponseCache(Long.getLong(SIZE_PROPERTY, DEFAULT_SIZE));
+
+    private final long capacity;
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    // every key in entries is queued exactly once; eviction walks the queue like a clock hand
+    private final ConcurrentLinkedQueue<Key> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicLong size = new AtomicLong();
+
+    ResponseCache(final long capacity) {
+        this.capacity = capacity;
+    }
+
+    public static ResponseCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * A response with the entity with the given id as its body, in the media type and content coding the request
+     * asks for, tagged with the {@link Util#getETag entity tag} of that body.
+     */
+    public ResponseContext respond(final RequestContext request, final Object id, final Versioned<?> entity) {
+        final MediaType mediaType = ContentNegotiation.getMediaType(request);
+        final Entry entry = entry(id, entity, mediaType);
+        final String encoding = Compression.getEncoding(request);
+        final String etag = Util.getETag(entity.getVersion(), mediaType);
+        final ResponseContext response = new ResponseContext().contentType(mediaType);
+        if (encoding == null || entry.body.length < Compression.MIN_SIZE) {
+            return response.header(Util.ETAG, etag).entity(entry.body);
+        }
+        return response
+                .header(Util.ETAG, Util.withCoding(etag, encoding))
+                .header(HttpHeaders.CONTENT_ENCODING, encoding)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .entity(compressed(entry, encoding));
+    }
+
+    /**
+     * The entry for the entity with the given id in the given media type, encoded now unless the cache holds it
+     * for the entity's current version.
+     */
+    private Entry entry(final Object id, final Versioned<?> entity, final MediaType mediaType) {
+        final Object value = entity.getValue();
+        final Key key = new Key(value.getClass(), id, format(mediaType));
+        final Entry cached = entries.get(key);
+        if (cached != null && cached.version == entity.getVersion()) {
+            cached.referenced = true;
+            return cached;
+        }
+
+        final Entry entry = new Entry(entity.getVersion(), encode(value, mediaType));
+        if (entry.body.length <= capacity / MAX_ENTRY_SHARE) {
+            size.addAndGet(entry.body.length);
+            final Entry replaced = entries.put(key, entry);
+            if (replaced == null) {
+                clock.offer(key);
+            } else {
+                size.addAndGet(-replaced.release());
+            }
+            evict();
+        } else {
+            // not cached, so its compressed bodies are not kept either
+            entry.release();
+        }
+        return entry;
+    }
+
+    private byte[] compressed(final Entry entry, final String encoding) {
+        final boolean gzip = Compression.GZIP.equals(encoding);
+        final byte[] kept = gzip ? entry.gzip : entry.deflate;
+        if (kept != null) {
+            return kept;
+        }
+        final byte[] compressed = Compression.compress(entry.body, encoding, Deflater.DEFAULT_COMPRESSION);
+        if (entry.keep(compressed, gzip)) {
+            size.addAndGet(compressed.length);
+            evict();
+        }
+        return compressed;
+    }
+
+    private void evict() {
+        while (size.get() > capacity) {
+            final Key key = clock.poll();
+            if (key == null) {
+                return;
+            }
+            final Entry entry = entries.get(key);
+            if (entry == null) {
+                continue;
+            }
+            if (entry.referenced) {
+                entry.referenced = false;
+                clock.offer(key);
+            } else if (entries.remove(key, entry)) {
+                size.addAndGet(-entry.release());
+            } else {
+                // replaced in the meantime; the key is still cached, so it stays on the clock
+                clock.offer(key);
+            }
+        }
+    }
+
+    private static int format(final MediaType mediaType) {
+        if (MediaType.APPLICATION_XML_TYPE.isCompatible(mediaType)) {
+            return XML;
+        }
+        if (ContentNegotiation.APPLICATION_YAML_TYPE.isCompatible(mediaType)) {
+            return YAML;
+        }
+        if (BinaryFormats.APPLICATION_CBOR_TYPE.isCompatible(mediaType)) {
+            return CBOR;
+        }
+        if (BinaryFormats.APPLICATION_SMILE_TYPE.isCompatible(mediaType)) {
+            return SMILE;
+        }
+        return BinaryFormats.APPLICATION_MSGPACK_TYPE.isCompatible(mediaType) ? MSGPACK : JSON;
+    }
+
+    private static byte[] encode(final Object value, final MediaType mediaType) {
+        try {
+            switch (format(mediaType)) {
+                case XML:
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+                    jaxbContext(value.getClass()).createMarshaller().marshal(value, out);
+                    return out.toByteArray();
+                case YAML:
+                    return YAML_WRITER.writeValueAsBytes(value);
+                case CBOR:
+                case SMILE:
+                case MSGPACK:
+                    return BinaryFormats.mapper(mediaType).writeValueAsBytes(value);
+                default:
+                    return JSON_WRITER.writeValueAsBytes(value);
+            }
+        } catch (JAXBException | JsonProcessingException e) {
+            throw new IllegalStateException("Cannot encode " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    private static JAXBContext jaxbContext(final Class<?> type) throws JAXBException {
+        final JAXBContext context = JAXB_CONTEXTS.get(type);
+        if (context != null) {
+            return context;
+        }
+        final JAXBContext created = JAXBContext.newInstance(type);
+        final JAXBContext raced = JAXB_CONTEXTS.putIfAbsent(type, created);
+        return raced == null ? created : raced;
+    }
+
+    private static final class Key {
+        private final Class<?> type;
+        private final Object id;
+        private final int format;
+
+        private Key(final Class<?> type, final Object id, final int format) {
+            this.type = type;
+            this.id = id;
+            this.format = format;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) other;
+            return type == key.type && format == key.format && id.equals(key.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return (type.hashCode() * 31 + id.hashCode()) * 31 + format;
+        }
+    }
+
+    private static final class Entry {
+        private final long version;
+        private final byte[] body;
+        private volatile byte[] gzip;
+        private volatile byte[] deflate;
+        private volatile boolean referenced;
+        // once out of the cache, the bytes it holds are no longer counted, so it must not take on more
+        private boolean released;
+
+        private Entry(final long version, final byte[] body) {
+            this.version = version;
+            this.body = body;
+        }
+
+        /**
+         * Keeps a compressed body unless one is kept already or the entry is out of the cache, and tells whether
+         * it was kept.
+         */
+        private synchronized boolean keep(final byte[] compressed, final boolean gzip) {
+            if (released || (gzip ? this.gzip : deflate) != null) {
+                return false;
+            }
+            if (gzip) {
+                this.gzip = compressed;
+            } else {
+                deflate = compressed;
+            }
+            return true;
+        }
+
+        /**
+         * Takes the entry out of the cache's accounting, returning the bytes it held.
+         */
+        private synchronized long release() {
+            released = true;
+            return body.length + (gzip == null ? 0 : gzip.length) + (deflate == null ? 0 : deflate.length);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package io.swagger.petstore.utils;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.swagger.petstore.model.Order;
+import io.swagger.petstore.model.Pet;
+import io.swagger.petstore.model.User;
+import io.swagger.v3.core.util.Json;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes every pet, order and user straight to the response stream as a gzip file of NDJSON, one entity per
+ * line wrapped in an object that names its type, e.g. {@code {"pet":{...}}}. The gzip is the file format, not a
+ * content coding, so it is sent as {@code application/gzip}. The entities are pulled one at a time from
+ * point-in-time iterators taken when the export is created, so the dump is never held in memory and writers are
+ * not held up while it is sent. The iterators are taken together at one point in time through {@link
+ * io.swagger.petstore.data.Repositories#atOnePointInTime}, so the dump is consistent across the stores: an order
+ * never names a pet deleted before it was exported. Passwords are left out.
+ */
+public class StoreExport implements StreamingOutput {
+    public static final String FILE_NAME = "petstore-export.ndjson.gz";
+    public static final MediaType APPLICATION_GZIP_TYPE = new MediaType("application", "gzip");
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final ObjectWriter WRITER = Json.mapper().copy()
+            .addMixIn(User.class, WithoutPassword.class)
+            .writer()
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    private final Iterator<Pet> pets;
+    private final Iterator<Order> orders;
+    private final Iterator<User> users;
+
+    public StoreExport(final Iterator<Pet> pets, final Iterator<Order> orders, final Iterator<User> users) {
+        this.pets = pets;
+        this.orders = orders;
+        this.users = users;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        final GZIPOutputStream gzip = new GZIPOutputStream(output, BUFFER_SIZE);
+        final JsonGenerator generator = WRITER.getFactory().createGenerator(gzip, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // lines are ended explicitly, so no separator between top-level values
+        generator.setRootValueSeparator(null);
+        writeLines(generator, "pet", pets);
+        writeLines(generator, "order", orders);
+        writeLines(generator, "user", users);
+        generator.close();
+        gzip.finish();
+    }
+
+    private static void writeLines(final JsonGenerator generator, final String type, final Iterator<?> entities)
+            throws IOException {
+        while (entities.hasNext()) {
+            generator.writeStartObject();
+            generator.writeFieldName(type);
+            WRITER.writeValue(generator, entities.next());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+    }
+
+    @JsonIgnoreProperties("password")
+    private abstract static class WithoutPassword {
+    }
+}
@@ -0,0 +1,92 @@
+package io.swagger.petstore.utils;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
+import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
+import io.swagger.v3.core.util.Json;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.namespace.QName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * Writes a lazily produced sequence of entities straight to the response stream, one at a time, so a large
+ * result is never materialized as a whole. The output matches what the json, yaml and xml entity processors
+ * and the {@link BinaryFormatProvider} write for a List of the same entities.
+ */
+public class StreamingList implements StreamingOutput {
+
+    private static final ObjectWriter JSON_WRITER = Json.mapper().writer()
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    private static final ObjectWriter YAML_WRITER = new YAMLMapper().writer()
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    private static final ObjectWriter XML_WRITER = createXmlMapper().writer()
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    // element names the XML provider uses for a serialized ArrayList
+    private static final QName XML_ROOT = new QName("ArrayList");
+    private static final String XML_ITEM = "item";
+
+    private final Iterator<?> items;
+    private final MediaType mediaType;
+
+    public StreamingList(final Iterator<?> items, final MediaType mediaType) {
+        this.items = items;
+        this.mediaType = mediaType;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        if (MediaType.APPLICATION_XML_TYPE.isCompatible(mediaType)) {
+            writeXml(output);
+        } else if ("yaml".equals(mediaType.getSubtype())) {
+            writeArray(YAML_WRITER, output);
+        } else if (BinaryFormats.isBinary(mediaType)) {
+            writeArray(BinaryFormats.mapper(mediaType).writer()
+                    .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE), output);
+        } else {
+            writeArray(JSON_WRITER, output);
+        }
+    }
+
+    private void writeArray(final ObjectWriter writer, final OutputStream output) throws IOException {
+        final JsonGenerator generator = writer.getFactory().createGenerator(output, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.writeStartArray();
+        while (items.hasNext()) {
+            writer.writeValue(generator, items.next());
+        }
+        generator.writeEndArray();
+        generator.close();
+    }
+
+    private void writeXml(final OutputStream output) throws IOException {
+        final ToXmlGenerator generator = (ToXmlGenerator) XML_WRITER.getFactory().createGenerator(output);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setNextName(XML_ROOT);
+        generator.writeStartObject();
+        while (items.hasNext()) {
+            generator.writeFieldName(XML_ITEM);
+            XML_WRITER.writeValue(generator, items.next());
+        }
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    private static XmlMapper createXmlMapper() {
+        final XmlMapper mapper = new XmlMapper();
+        mapper.setAnnotationIntrospector(AnnotationIntrospector.pair(new JacksonAnnotationIntrospector(),
+                new JaxbAnnotationIntrospector(mapper.getTypeFactory())));
+        return mapper;
+    }
+}
@@ -1,44 +1,183 @@
 package io.swagger.petstore.utils;
 
 import io.swagger.oas.inflector.models.RequestContext;
+import io.swagger.oas.inflector.models.ResponseContext;
 
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
-import java.util.List;
+import javax.ws.rs.core.Response;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
 
 public class Util {
 
-    private static final String APPLICATION = "application";
-    private static final String YAML = "yaml";
+    public static final String ETAG = "ETag";
+    public static final String IF_MATCH = "If-Match";
+    public static final String NEXT_CURSOR = "X-Next-Cursor";
 
-    public static MediaType getMediaType(final RequestContext request) {
-        MediaType outputType = MediaType.APPLICATION_JSON_TYPE;
+    public static final String MAX_AGE_PROPERTY = "petstore.responses.max-age";
 
-        final List<String> accept = request.getHeaders().get("Accept");
-        String responseMediaType = "";
-        if (accept != null && accept.get(0) != null) {
-            responseMediaType = accept.get(0);
+    // without a max age, caches may keep responses but must revalidate them on every use
+    private static final String[] CODINGS = {Compression.GZIP, Compression.DEFLATE};
+
+    private static final String CACHE_POLICY = Integer.getInteger(MAX_AGE_PROPERTY, 0) > 0
+            ? "max-age=" + Integer.getInteger(MAX_AGE_PROPERTY) : "no-cache";
+
+    /**
+     * The entity tag of the given version of a response body in the media type the request negotiates. Each
+     * format is a different body, so each gets a tag of its own; the version leads, so that {@link
+     * #matchesIfMatch} can tell which version a tag names whatever format it was read in. The stores count
+     * versions on from the clock at startup, so a tag cached before a restart does not match a body after it.
+     */
+    public static String getETag(final RequestContext request, final long version) {
+        return getETag(version, ContentNegotiation.getMediaType(request));
+    }
+
+    public static String getETag(final long version, final MediaType mediaType) {
+        return "\"" + version + "-" + mediaType.getSubtype().toLowerCase() + "\"";
+    }
+
+    public static boolean hasIfMatch(final RequestContext request) {
+        return request.getHeaders().getFirst(IF_MATCH) != null;
+    }
+
+    /**
+     * The tag of a body sent in the given content coding: a compressed body is a different body from the one it
+     * was made from, so it gets the coding appended to the tag of the uncompressed one.
+     */
+    public static String withCoding(final String etag, final String encoding) {
+        return etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+    }
+
+    /**
+     * Evaluates If-Match against the current version of the target entity. A strong tag of any format matches
+     * if it names that version; weak tags never do. A request without If-Match always matches. A tag kept from an
+     * earlier run names a version below any this run hands out, so it never matches and the write gets 412.
+     */
+    public static boolean matchesIfMatch(final RequestContext request, final long version) {
+        final String ifMatch = request.getHeaders().getFirst(IF_MATCH);
+        if (ifMatch == null) {
+            return true;
         }
-        if (MediaType.APPLICATION_XML.equals(responseMediaType)) {
-            return MediaType.APPLICATION_XML_TYPE;
+        for (final String candidate : ifMatch.split(",")) {
+            final String trimmed = candidate.trim();
+            if ("*".equals(trimmed) || version(trimmed) == version) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        boolean isJsonOK = false;
-        boolean isYamlOK = false;
+    /**
+     * The version a tag from {@link #getETag} names, or -1 if the tag is not one of those.
+     */
+    private static long version(final String etag) {
+        if (etag.length() < 3 || etag.charAt(0) != '"' || etag.charAt(etag.length() - 1) != '"') {
+            return -1;
+        }
+        final int dash = etag.indexOf('-', 1);
+        try {
+            return Long.parseLong(etag.substring(1, dash < 0 ? etag.length() - 1 : dash));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 
-        final MediaType yamlMediaType = new MediaType(APPLICATION, YAML);
+    /**
+     * Evaluates If-None-Match, or If-Modified-Since when there is none, against the current validators of the
+     * response, so that a client holding the current representation can be sent 304 without it.
+     */
+    public static boolean isNotModified(final RequestContext request, final String etag, final long lastModified) {
+        final String ifNoneMatch = request.getHeaders().getFirst(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return matchingTag(ifNoneMatch, etag) != null;
+        }
 
-        for (final MediaType mediaType : request.getAcceptableMediaTypes()) {
-            if (mediaType.equals(MediaType.APPLICATION_JSON_TYPE)) {
-                isJsonOK = true;
-            } else if (mediaType.equals(yamlMediaType)) {
-                isYamlOK = true;
+        final String ifModifiedSince = request.getHeaders().getFirst(HttpHeaders.IF_MODIFIED_SINCE);
+        if (ifModifiedSince == null) {
+            return false;
+        }
+        try {
+            final ZonedDateTime since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return lastModified / 1000 <= since.toEpochSecond();
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The tag in the If-None-Match value that names the representation with the given tag, in whichever content
+     * coding it was received, or null if none does. If-None-Match uses weak comparison.
+     */
+    private static String matchingTag(final String ifNoneMatch, final String etag) {
+        for (final String candidate : ifNoneMatch.split(",")) {
+            final String trimmed = candidate.trim();
+            final String opaque = trimmed.startsWith("W/") ? trimmed.substring(2) : trimmed;
+            if ("*".equals(opaque) || etag.equals(opaque) || etag.equals(withoutCoding(opaque))) {
+                return "*".equals(opaque) ? etag : opaque;
             }
         }
+        return null;
+    }
 
-        if (isYamlOK && !isJsonOK) {
-            outputType = yamlMediaType;
+    private static String withoutCoding(final String etag) {
+        for (final String encoding : CODINGS) {
+            final String suffix = "-" + encoding + "\"";
+            if (etag.endsWith(suffix)) {
+                return etag.substring(0, etag.length() - suffix.length()) + "\"";
+            }
         }
+        return etag;
+    }
+
+    /**
+     * Adds the validators and caching policy of a cacheable response.
+     */
+    public static ResponseContext withValidators(final ResponseContext response, final String etag,
+                                                 final long lastModified) {
+        return withLastModified(response.header(ETAG, etag), lastModified);
+    }
+
+    /**
+     * Adds the caching policy of a cacheable response that has its ETag already.
+     */
+    public static ResponseContext withLastModified(final ResponseContext response, final long lastModified) {
+        return response
+                .header(HttpHeaders.LAST_MODIFIED, DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                        ZonedDateTime.ofInstant(Instant.ofEpochMilli(lastModified), ZoneOffset.UTC)))
+                .header(HttpHeaders.CACHE_CONTROL, CACHE_POLICY)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+    }
+
+    /**
+     * A 304 for a request that {@link #isNotModified}. It carries the tag the client matched, which names the
+     * content coding of the body the client holds.
+     */
+    public static ResponseContext notModified(final RequestContext request, final String etag,
+                                              final long lastModified) {
+        final String ifNoneMatch = request.getHeaders().getFirst(HttpHeaders.IF_NONE_MATCH);
+        final String matched = ifNoneMatch == null ? null : matchingTag(ifNoneMatch, etag);
+        return withValidators(new ResponseContext().status(Response.Status.NOT_MODIFIED),
+                matched == null ? etag : matched, lastModified);
+    }
+
+    /**
+     * Encodes the id of the last entity on a page as an opaque cursor for the next page.
+     */
+    public static String encodeCursor(final long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(Long.toString(lastId).getBytes(StandardCharsets.UTF_8));
+    }
 
-        return outputType;
+    /**
+     * @throws IllegalArgumentException if the cursor was not produced by {@link #encodeCursor(long)}
+     */
+    public static long decodeCursor(final String cursor) {
+        return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
     }
 }
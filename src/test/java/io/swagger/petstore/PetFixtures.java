@@ -0,0 +1,46 @@
+package io.swagger.petstore;
+
+import io.swagger.petstore.data.PetData;
+import io.swagger.petstore.model.Category;
+import io.swagger.petstore.model.Pet;
+import io.swagger.petstore.model.Tag;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The pets the tests store, encode and compare.
+ */
+public final class PetFixtures {
+    private static final String[] STATUSES = {"available", "pending", "sold"};
+
+    private PetFixtures() {
+    }
+
+    /**
+     * A pet whose status, two tags and photo vary with its id, for tests that need many different pets.
+     */
+    public static Pet pet(final long id) {
+        final Pet pet = pet(id, STATUSES[(int) (id % STATUSES.length)], "tag" + id % 16, "tag" + (id + 1) % 16);
+        pet.setPhotoUrls(Collections.singletonList("https://example.com/pets/" + id + ".jpg"));
+        return pet;
+    }
+
+    /**
+     * A dog with one photo, the given status and a tag of each given name.
+     */
+    public static Pet pet(final long id, final String status, final String... tags) {
+        final Category category = new Category();
+        category.setId(1);
+        category.setName("Dogs");
+        final List<Tag> tagList = new ArrayList<>();
+        for (final String name : tags) {
+            final Tag tag = new Tag();
+            tag.setId(tagList.size());
+            tag.setName(name);
+            tagList.add(tag);
+        }
+        return PetData.createPet(id, category, "Pet " + id, Collections.singletonList("url"), tagList, status);
+    }
+}
@@ -0,0 +1,194 @@
+package io.swagger.petstore.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The change feed ring: readers get every event in sequence order across the end of the ring, also while several
+ * writers publish at once, and a reader that asks for an event the ring no longer holds, or never held, is told
+ * to resync instead of being given a gap.
+ */
+public class ChangeFeedTest {
+    // not a multiple of the capacities below, so the first event does not land in slot 0
+    private static final long FIRST = 1001;
+
+    @Test
+    public void deliversEventsInOrderAcrossTheEndOfTheRing() {
+        final ChangeFeed feed = new ChangeFeed(4, FIRST);
+        final ChangeFeed.Cursor cursor = feed.subscribe(null);
+        assertNull(cursor.poll());
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 3; i++) {
+                feed.publish(ChangeFeed.PET, ChangeFeed.PUT, (long) lap * 3 + i, lap * 3 + i + 1);
+            }
+            for (int i = 0; i < 3; i++) {
+                final ChangeFeed.Event event = cursor.poll();
+                assertFalse(event.isResync());
+                assertEquals(FIRST + lap * 3 + i, event.getSequence());
+                assertEquals((long) lap * 3 + i, event.getKey());
+                assertEquals(lap * 3 + i + 1, event.getVersion());
+            }
+            assertNull(cursor.poll());
+        }
+        assertEquals(FIRST + 8, feed.latest());
+        assertEquals(FIRST + 8, feed.latest(ChangeFeed.PET));
+        assertEquals(FIRST - 1, feed.latest(ChangeFeed.ORDER));
+    }
+
+    @Test
+    public void resyncsAReaderThatFellAWholeRingBehind() {
+        final ChangeFeed feed = new ChangeFeed(4, FIRST);
+        final ChangeFeed.Cursor cursor = feed.subscribe(null);
+        feed.publish(ChangeFeed.ORDER, ChangeFeed.PUT, 1L, 1);
+        assertEquals(FIRST, cursor.poll().getSequence());
+        for (int i = 2; i <= 6; i++) {
+            feed.publish(ChangeFeed.ORDER, ChangeFeed.PUT, (long) i, i);
+        }
+
+        // the next event the reader wants, FIRST + 1, was overwritten by FIRST + 5
+        final ChangeFeed.Event resync = cursor.poll();
+        assertTrue(resync.isResync());
+        assertNull(resync.getEntity());
+        assertEquals(feed.latest(), resync.getSequence());
+        assertNull(cursor.poll());
+
+        feed.publish(ChangeFeed.USER, ChangeFeed.DELETE, "user1", 7);
+        final ChangeFeed.Event event = cursor.poll();
+        assertEquals(FIRST + 6, event.getSequence());
+        assertEquals(ChangeFeed.USER, event.getEntity());
+        assertEquals(ChangeFeed.DELETE, event.getOperation());
+        assertEquals("user1", event.getKey());
+    }
+
+    @Test
+    public void resumesOnlyFromASequenceTheRingStillHolds() {
+        final ChangeFeed feed = new ChangeFeed(4, FIRST);
+        for (int i = 1; i <= 10; i++) {
+            feed.publish(ChangeFeed.PET, ChangeFeed.PUT, (long) i, i);
+        }
+        final long latest = feed.latest();
+        assertEquals(FIRST + 9, latest);
+
+        // the ring holds the last four events
+        final ChangeFeed.Cursor held = feed.subscribe(latest - 4);
+        for (long sequence = latest - 3; sequence <= latest; sequence++) {
+            assertEquals(sequence, held.poll().getSequence());
+        }
+        assertNull(held.poll());
+
+        // older than the ring, from before this run, or from a later one
+        for (final long after : new long[]{latest - 5, FIRST, FIRST - 100, latest + 5}) {
+            final ChangeFeed.Event resync = feed.subscribe(after).poll();
+            assertTrue("after " + after, resync.isResync());
+            assertEquals(latest, resync.getSequence());
+        }
+    }
+
+    @Test
+    public void wakesAWaitingReaderOnPublish() throws Exception {
+        final ChangeFeed feed = new ChangeFeed(4, FIRST);
+        final ChangeFeed.Cursor cursor = feed.subscribe(null);
+        assertNull(cursor.next(10, TimeUnit.MILLISECONDS));
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> published = executor.submit(() -> {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+                feed.publish(ChangeFeed.PET, ChangeFeed.PUT, 1L, 1);
+            });
+            final ChangeFeed.Event event = cursor.next(10, TimeUnit.SECONDS);
+            assertNotNull(event);
+            assertEquals(FIRST, event.getSequence());
+            published.get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void givesOneReaderTheEventsOfConcurrentWritersInOrder() throws Exception {
+        final int capacity = 64;
+        final int writers = 4;
+        final int perWriter = 5000;
+        final long last = FIRST + writers * perWriter - 1;
+        final ChangeFeed feed = new ChangeFeed(capacity, FIRST);
+        final ChangeFeed.Cursor cursor = feed.subscribe(null);
+        final AtomicLong lapped = new AtomicLong();
+        final CountDownLatch resynced = new CountDownLatch(1);
+        final AtomicLong read = new AtomicLong(FIRST - 1);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            final List<Future<?>> done = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                final long writer = w;
+                done.add(executor.submit(() -> {
+                    for (int i = 1; i <= perWriter; i++) {
+                        if (i > 2 * capacity) {
+                            // keep less than half a ring ahead of the reader, so from here on it is never lapped;
+                            // each writer has at most one more event in flight
+                            while (feed.latest() - read.get() >= capacity / 2) {
+                                Thread.yield();
+                            }
+                        }
+                        feed.publish(ChangeFeed.ORDER, ChangeFeed.PUT, writer, i);
+                        if (i == 2 * capacity) {
+                            lapped.addAndGet(i);
+                            resynced.await();
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            // first fall behind until the writers have lapped the ring twice, so the first event is gone
+            while (lapped.get() < writers * 2 * capacity) {
+                Thread.yield();
+            }
+            final ChangeFeed.Event resync = cursor.next(10, TimeUnit.SECONDS);
+            assertTrue(resync.isResync());
+            assertEquals(FIRST + writers * 2 * capacity - 1, resync.getSequence());
+            read.set(resync.getSequence());
+            resynced.countDown();
+
+            // then read every event after the resync while the writers are still publishing
+            final long[] versions = new long[writers];
+            for (long sequence = resync.getSequence() + 1; sequence <= last; sequence++) {
+                final ChangeFeed.Event event = cursor.next(10, TimeUnit.SECONDS);
+                assertNotNull("stuck after " + (sequence - 1), event);
+                assertFalse("resync at " + sequence, event.isResync());
+                assertEquals(sequence, event.getSequence());
+                // the events of one writer come in the order it published them
+                final int writer = (int) (long) (Long) event.getKey();
+                assertTrue(event.getVersion() > versions[writer]);
+                versions[writer] = event.getVersion();
+                read.set(sequence);
+            }
+            for (final Future<?> writer : done) {
+                writer.get();
+            }
+            for (final long version : versions) {
+                assertEquals(perWriter, version);
+            }
+            assertEquals(last, feed.latest(ChangeFeed.ORDER));
+            assertNull(cursor.poll());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package io.swagger.petstore.data;
+
+import io.swagger.petstore.model.Order;
+import io.swagger.petstore.model.Pet;
+import io.swagger.petstore.model.User;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static io.swagger.petstore.data.RepositoryConformanceTest.json;
+import static io.swagger.petstore.data.RepositoryConformanceTest.pet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trips through the mutation log and snapshots: what is appended, rotated and snapshotted is what a log
+ * opened later on the same directory replays. Stores show a write only once the log has it.
+ */
+public class MutationLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysTheNewestRecordPerKey() throws IOException {
+        final Path directory = folder.getRoot().toPath();
+        final MutationLog log = MutationLog.open(directory);
+        assertTrue(log.isEmpty());
+        // replay does not depend on the order the records of one key reach the file in
+        log.append(MutationLog.PET_PUT, 3, pet(1, "sold"));
+        log.append(MutationLog.PET_PUT, 2, pet(1, "pending"));
+        log.append(MutationLog.PET_PUT, 4, pet(2, "available"));
+        log.append(MutationLog.PET_DELETE, 5, 2L);
+        log.appendAll(MutationLog.PET_PUT, 6, Arrays.asList(pet(3, "available"), pet(4, "available")));
+
+        final MutationLog reopened = MutationLog.open(directory);
+        assertFalse(reopened.isEmpty());
+        final MutationLog.Replay<Long> replay = replayPets(reopened);
+        assertEquals(6, replay.getVersion());
+        final Map<Long, MutationLog.Record> latest = byKey(replay);
+        assertEquals("sold", latest.get(1L).getPayload(Pet.class).getStatus());
+        assertEquals(3, latest.get(1L).getVersion());
+        assertEquals(MutationLog.PET_DELETE, latest.get(2L).getType());
+        assertEquals(6, latest.get(3L).getVersion());
+        assertEquals(6, latest.get(4L).getVersion());
+    }
+
+    @Test
+    public void replaysRecordsOfMixedTypesWrittenTogether() throws IOException {
+        final Path directory = folder.getRoot().toPath();
+        final MutationLog log = MutationLog.open(directory);
+        log.append(MutationLog.USER_PUT, 1, user("old"));
+        log.appendAll(new byte[]{MutationLog.USER_DELETE, MutationLog.USER_PUT}, 2, Arrays.asList("old", user("new")));
+
+        final MutationLog.Replay<String> replay = MutationLog.open(directory).replay(MutationLog.USER_PUT,
+                MutationLog.USER_DELETE, record -> record.getType() == MutationLog.USER_PUT
+                        ? record.getPayload(User.class).getUsername() : record.getPayload(String.class));
+        final Map<String, Byte> types = new HashMap<>();
+        for (final MutationLog.Record record : replay.getRecords()) {
+            types.put(record.getType() == MutationLog.USER_PUT
+                    ? record.getPayload(User.class).getUsername() : record.getPayload(String.class), record.getType());
+        }
+        assertEquals(Byte.valueOf(MutationLog.USER_DELETE), types.get("old"));
+        assertEquals(Byte.valueOf(MutationLog.USER_PUT), types.get("new"));
+    }
+
+    @Test
+    public void cutsATornTailWhenOpened() throws IOException {
+        final Path directory = folder.getRoot().toPath();
+        MutationLog.open(directory).append(MutationLog.ORDER_DELETE, 7, 42L);
+        final Path file = directory.resolve("petstore-0.log");
+        final long intact = Files.size(file);
+        try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.APPEND)) {
+            // a record header and the start of a body, as left by a crash during the write
+            new DataOutputStream(out).writeInt(64);
+            out.write(new byte[20]);
+        }
+
+        final MutationLog reopened = MutationLog.open(directory);
+        assertEquals(intact, Files.size(file));
+        reopened.append(MutationLog.ORDER_DELETE, 8, 43L);
+        assertEquals(2, replayOrders(MutationLog.open(directory)).getRecords().size());
+    }
+
+    @Test
+    public void doesNotTrustARecordLengthLongerThanTheFile() throws IOException {
+        final Path directory = folder.getRoot().toPath();
+        MutationLog.open(directory).append(MutationLog.ORDER_DELETE, 7, 42L);
+        final Path file = directory.resolve("petstore-0.log");
+        final long intact = Files.size(file);
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND))) {
+            out.writeInt(Integer.MAX_VALUE - 16);
+            out.writeInt(0);
+            out.write(new byte[100]);
+        }
+
+        final MutationLog reopened = MutationLog.open(directory);
+        assertEquals(intact, Files.size(file));
+        assertEquals(7, replayOrders(reopened).getVersion());
+    }
+
+    @Test
+    public void keepsEveryRecordOfConcurrentWriters() throws Exception {
+        final Path directory = folder.getRoot().toPath();
+        final MutationLog log = MutationLog.open(directory);
+        final int writers = 8;
+        final int perWriter = 250;
+        final ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            final List<Future<?>> done = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                final int writer = w;
+                done.add(executor.submit(() -> {
+                    for (int i = 0; i < perWriter; i++) {
+                        final long id = writer * perWriter + i + 1;
+                        log.append(MutationLog.ORDER_PUT, id, OrderData.createOrder(id, 1, 1, null, "placed", false));
+                    }
+                }));
+            }
+            for (final Future<?> writer : done) {
+                writer.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        final MutationLog.Replay<Long> replay = replayOrders(MutationLog.open(directory));
+        assertEquals(writers * perWriter, replay.getRecords().size());
+        assertEquals(writers * perWriter, replay.getVersion());
+    }
+
+    @Test
+    public void replaysTheSnapshotAndTheLogWrittenSince() throws IOException {
+        final Path directory = folder.getRoot().toPath();
+        final MutationLog log = MutationLog.open(directory);
+        log.append(MutationLog.PET_PUT, 1, pet(1, "available", "snapshotted"));
+        log.append(MutationLog.PET_PUT, 2, pet(2, "available"));
+        log.append(MutationLog.PET_DELETE, 3, 9L);
+        log.append(MutationLog.ORDER_PUT, 1, OrderData.createOrder(1, 1, 2, new Date(1000), "placed", true));
+
+        final long generation = log.rotate();
+        final Pet kept = pet(1, "available", "snapshotted");
+        try (SnapshotFile.Writer writer = SnapshotFile.create(log.snapshotFile(generation))) {
+            writer.writeSequence(MutationLog.PET_PUT, 3);
+            writer.write(MutationLog.PET_PUT, 1, kept);
+            writer.write(MutationLog.PET_PUT, 2, pet(2, "available"));
+            writer.writeSequence(MutationLog.ORDER_PUT, 1);
+            writer.write(MutationLog.ORDER_PUT, 1, OrderData.createOrder(1, 1, 2, new Date(1000), "placed", true));
+        }
+        log.deleteBefore(generation);
+        log.append(MutationLog.PET_PUT, 4, pet(2, "sold"));
+
+        final MutationLog reopened = MutationLog.open(directory);
+        final MutationLog.Replay<Long> pets = replayPets(reopened);
+        // the deleted pet's version outlives it through the sequence record
+        assertEquals(4, pets.getVersion());
+        final Map<Long, MutationLog.Record> latest = byKey(pets);
+        assertEquals(2, latest.size());
+        assertEquals(json(kept), json(latest.get(1L).getPayload(Pet.class)));
+        assertEquals("sold", latest.get(2L).getPayload(Pet.class).getStatus());
+
+        final MutationLog.Replay<Long> orders = replayOrders(reopened);
+        assertEquals(1, orders.getVersion());
+        final Order order = orders.getRecords().iterator().next().getPayload(Order.class);
+        assertEquals(new Date(1000), order.getShipDate());
+        assertTrue(order.isComplete());
+    }
+
+    @Test
+    public void refusesMutationsOnceAFlushFailed() throws Exception {
+        final MutationLog log = MutationLog.open(folder.getRoot().toPath());
+        log.ensureWritable();
+        final Field channel = MutationLog.class.getDeclaredField("channel");
+        channel.setAccessible(true);
+        ((FileChannel) channel.get(log)).close();
+
+        try {
+            log.append(MutationLog.ORDER_DELETE, 1, 1L);
+            fail("append to a closed log file");
+        } catch (UncheckedIOException expected) {
+            // the writer of the failed flush gets the error
+        }
+        try {
+            log.ensureWritable();
+            fail("the log accepted mutations after a failed flush");
+        } catch (UncheckedIOException expected) {
+            // and so does every later writer, before installing anything
+        }
+    }
+
+    @Test
+    public void neverShowsAMutationWhoseFlushFailed() throws Exception {
+        final MutationLog log = MutationLog.open(folder.getRoot().toPath());
+        final AtomicReference<String> store = new AtomicReference<>("seeded");
+        final DurableView<String> view = new DurableView<>(log, store.get());
+        view.write(() -> install(store, "logged"), state -> {
+            // installed and queued, but not on disk yet
+            assertEquals("seeded", view.get());
+            return log.queue(MutationLog.USER_PUT, 1, user(state));
+        });
+        assertEquals("logged", view.get());
+
+        final Field channel = MutationLog.class.getDeclaredField("channel");
+        channel.setAccessible(true);
+        ((FileChannel) channel.get(log)).close();
+        try {
+            view.write(() -> install(store, "lost"), state -> log.queue(MutationLog.USER_PUT, 2, user(state)));
+            fail("wrote to a closed log file");
+        } catch (UncheckedIOException expected) {
+            // the writer is told
+        }
+        assertEquals("lost", store.get());
+        assertEquals("logged", view.get());
+
+        // nor does a later write, which would show the lost one along with its own
+        try {
+            view.write(() -> install(store, "later"), state -> log.queued());
+            fail("the view accepted a write after a failed flush");
+        } catch (UncheckedIOException expected) {
+            // refused before it is installed
+        }
+        assertEquals("lost", store.get());
+        assertEquals("logged", view.get());
+        assertEquals(1, replayUsers(MutationLog.open(folder.getRoot().toPath())).getVersion());
+    }
+
+    @Test
+    public void showsTheNewestStateOfConcurrentWriters() throws Exception {
+        final MutationLog log = MutationLog.open(folder.getRoot().toPath());
+        final AtomicLong store = new AtomicLong();
+        final DurableView<Long> view = new DurableView<>(log, 0L);
+        final int writers = 8;
+        final int perWriter = 250;
+        final ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            final List<Future<?>> done = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                done.add(executor.submit(() -> {
+                    for (int i = 0; i < perWriter; i++) {
+                        final long written = view.write(store::incrementAndGet,
+                                state -> log.queue(MutationLog.ORDER_DELETE, state, state));
+                        // a writer sees its own write, or a newer one, once it returns
+                        assertTrue(view.get() >= written);
+                    }
+                }));
+            }
+            for (final Future<?> writer : done) {
+                writer.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(writers * perWriter, (long) view.get());
+        assertEquals(writers * perWriter, replayOrders(MutationLog.open(folder.getRoot().toPath())).getVersion());
+    }
+
+    private static String install(final AtomicReference<String> store, final String state) {
+        store.set(state);
+        return state;
+    }
+
+    private static MutationLog.Replay<String> replayUsers(final MutationLog log) {
+        return log.replay(MutationLog.USER_PUT, MutationLog.USER_DELETE,
+                record -> record.getType() == MutationLog.USER_PUT
+                        ? record.getPayload(User.class).getUsername() : record.getPayload(String.class));
+    }
+
+    private static MutationLog.Replay<Long> replayPets(final MutationLog log) {
+        return log.replay(MutationLog.PET_PUT, MutationLog.PET_DELETE, record -> record.getType() == MutationLog.PET_PUT
+                ? record.getPayload(Pet.class).getId() : record.getPayload(Long.class));
+    }
+
+    private static MutationLog.Replay<Long> replayOrders(final MutationLog log) {
+        return log.replay(MutationLog.ORDER_PUT, MutationLog.ORDER_DELETE,
+                record -> record.getType() == MutationLog.ORDER_PUT
+                        ? record.getPayload(Order.class).getId() : record.getPayload(Long.class));
+    }
+
+    private static Map<Long, MutationLog.Record> byKey(final MutationLog.Replay<Long> replay) {
+        final Map<Long, MutationLog.Record> latest = new HashMap<>();
+        for (final MutationLog.Record record : replay.getRecords()) {
+            latest.put(record.getType() == MutationLog.PET_PUT
+                    ? record.getPayload(Pet.class).getId() : record.getPayload(Long.class), record);
+        }
+        return latest;
+    }
+
+    private static User user(final String username) {
+        return UserData.createUser(1, username, "first", "last", "user@example.com", "123", 1);
+    }
+}
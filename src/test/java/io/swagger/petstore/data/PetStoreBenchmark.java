@@ -0,0 +1,83 @@
+package io.swagger.petstore.data;
+
+import org.junit.Test;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static io.swagger.petstore.data.PetStoreComparisonTest.filled;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The heap the off-heap pet store saves, and what materializing a pet on every read costs it, against the heap
+ * store. Both depend on the JVM and the machine, so this only runs in the benchmarks profile:
+ * {@code mvn test -Pbenchmarks}. Heap is measured after collections, so only a lost encoding fails the limit.
+ */
+public class PetStoreBenchmark {
+    private static final int PETS = 200000;
+    private static final int LOOKUPS = 1000000;
+
+    @Test
+    public void holdsThePetsInAFractionOfTheHeap() {
+        final long heapBytes = heapUsedBy("heap");
+        final long offHeapBytes = heapUsedBy("offheap");
+        assertTrue(PETS / 1000 + "k pets: heap store " + heapBytes + " B, off-heap store " + offHeapBytes
+                + " B of heap", offHeapBytes * 3 < heapBytes);
+    }
+
+    @Test
+    public void readsWithinAFewTimesTheHeapStore() {
+        final PetStore heap = filled("heap", PETS);
+        final PetStore offHeap = filled("offheap", PETS);
+        lookups(heap, LOOKUPS);
+        lookups(offHeap, LOOKUPS);
+        final long heapNanos = lookups(heap, LOOKUPS);
+        final long offHeapNanos = lookups(offHeap, LOOKUPS);
+        assertTrue("get+toPet: heap store " + heapNanos / LOOKUPS + " ns, off-heap store "
+                + offHeapNanos / LOOKUPS + " ns", offHeapNanos < heapNanos * 4);
+    }
+
+    private static long heapUsedBy(final String storage) {
+        final long before = usedHeap();
+        final long directBefore = usedDirect();
+        final PetStore store = filled(storage, PETS);
+        final long used = usedHeap() - before;
+        // the off-heap store's own memory is direct, and not counted against it
+        assertTrue(storage.equals("heap") || usedDirect() > directBefore);
+        // read after measuring, so the store is still reachable while it is measured
+        assertEquals(PETS, store.catalog().size());
+        return used;
+    }
+
+    private static long lookups(final PetStore store, final int rounds) {
+        final Random random = new Random(rounds);
+        final PetCatalog catalog = store.catalog();
+        long names = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            names += catalog.get(random.nextInt(PETS)).toPet().getName().length();
+        }
+        final long elapsed = System.nanoTime() - start;
+        assertTrue(names > 0);
+        return elapsed;
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long usedDirect() {
+        for (final BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,49 @@
+package io.swagger.petstore.data;
+
+import io.swagger.petstore.model.Pet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.swagger.petstore.PetFixtures.pet;
+import static io.swagger.petstore.data.RepositoryConformanceTest.json;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The off-heap pet store against the heap one: the same pets back, with the same versions and tags. The heap it
+ * saves and the cost of materializing a pet on every read are measured by {@link PetStoreBenchmark}.
+ */
+public class PetStoreComparisonTest {
+    private static final int PETS = 2000;
+
+    @Test
+    public void readsBackTheSamePets() {
+        final PetStore heap = filled("heap", PETS);
+        final PetStore offHeap = filled("offheap", PETS);
+        assertEquals(PETS, offHeap.catalog().size());
+        for (long id = 0; id < PETS; id++) {
+            final StoredPet inHeap = heap.catalog().get(id);
+            final StoredPet offHeapPet = offHeap.catalog().get(id);
+            assertEquals(inHeap.getVersion(), offHeapPet.getVersion());
+            assertEquals(inHeap.getTagNames(), offHeapPet.getTagNames());
+            assertEquals(json(inHeap.toPet()), json(offHeapPet.toPet()));
+        }
+    }
+
+    static PetStore filled(final String storage, final int count) {
+        final PetStore store = PetStore.create(storage);
+        final List<Pet> pets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            pets.add(pet(i));
+        }
+        store.update(current -> {
+            final List<StoredPet> batch = new ArrayList<>(pets.size());
+            for (final Pet pet : pets) {
+                batch.add(store.store(pet, current.nextVersion()));
+            }
+            return current.putAll(batch);
+        });
+        return store;
+    }
+}
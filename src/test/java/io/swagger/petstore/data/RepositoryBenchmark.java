@@ -0,0 +1,96 @@
+package io.swagger.petstore.data;
+
+import io.swagger.petstore.model.Pet;
+import io.swagger.petstore.model.User;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static io.swagger.petstore.data.RepositoryConformanceTest.pet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The speed-ups the indexes of the heap backend were added for, against the list backend. Wall-clock times depend
+ * on the machine, so this only runs in the benchmarks profile: {@code mvn test -Pbenchmarks}. The limits are
+ * loose, so only a lost index fails them; a failure reports the times measured.
+ */
+public class RepositoryBenchmark {
+    private static final String[] STATUSES = {"available", "pending", "sold"};
+
+    private PetRepository heap;
+    private PetRepository list;
+    private long base;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Repositories.logDirectory() == null && Repositories.pets() instanceof PetData);
+        heap = Repositories.pets();
+        list = new ListPetRepository();
+        base = ThreadLocalRandom.current().nextLong(1L << 40, 1L << 50);
+    }
+
+    @Test
+    public void pagesByStatusFasterThanTheListBackend() {
+        final String run = Long.toString(base, 36);
+        final List<Pet> pets = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            pets.add(pet(base + i, STATUSES[i % STATUSES.length] + "-" + run));
+        }
+        heap.addPets(pets);
+        list.addPets(pets);
+
+        pagesAndLookups(list, run, 200);
+        pagesAndLookups(heap, run, 200);
+        final long listNanos = pagesAndLookups(list, run, 2000);
+        final long heapNanos = pagesAndLookups(heap, run, 2000);
+        assertTrue("2000 status pages and lookups over 20k pets: heap " + heapNanos + " ns, list " + listNanos
+                + " ns", heapNanos * 5 < listNanos);
+    }
+
+    @Test
+    public void storesAHundredThousandUsersInUnderASecond() {
+        final UserRepository users = Repositories.users();
+        users.addUsers(users(100000, "warm-up"));
+
+        // the best of a few batches, so a collection or a busy machine during one of them does not count
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            final List<User> batch = users(100000, "batch-" + round);
+            final long start = System.nanoTime();
+            users.addUsers(batch);
+            best = Math.min(best, System.nanoTime() - start);
+            assertEquals(batch.get(batch.size() - 1).getId(),
+                    users.findUserByName(batch.get(batch.size() - 1).getUsername()).getId());
+        }
+        final long millis = TimeUnit.NANOSECONDS.toMillis(best);
+        assertTrue("100k-user batch: " + millis + " ms", millis < 1000);
+    }
+
+    private long pagesAndLookups(final PetRepository pets, final String run, final int rounds) {
+        final Random random = new Random(rounds);
+        final long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            final long after = base + random.nextInt(20000);
+            final List<Pet> page = pets.findPetByStatus(STATUSES[i % STATUSES.length] + "-" + run, after, 20);
+            assertTrue(page.size() <= 20);
+            assertTrue(pets.getPetById(after) != null);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private List<User> users(final int count, final String prefix) {
+        final List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(UserData.createUser(base + i, prefix + "-" + base + "-" + i, "first", "last",
+                    "user@example.com", "123", 1));
+        }
+        return users;
+    }
+}
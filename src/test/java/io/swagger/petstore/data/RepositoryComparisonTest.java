@@ -0,0 +1,104 @@
+package io.swagger.petstore.data;
+
+import io.swagger.petstore.model.Pet;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static io.swagger.petstore.data.RepositoryConformanceTest.json;
+import static io.swagger.petstore.data.RepositoryConformanceTest.pet;
+import static io.swagger.petstore.data.RepositoryConformanceTest.tag;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The indexed heap backend against the original list backend: the same answers to a random mix of operations.
+ * Runs where {@link Repositories} selects the heap backend; the list backend is created alongside it. The
+ * speed-ups the indexes were added for are measured by {@link RepositoryBenchmark}.
+ */
+public class RepositoryComparisonTest {
+    private static final String[] STATUSES = {"available", "pending", "sold"};
+
+    private PetRepository heap;
+    private PetRepository list;
+    private long base;
+
+    @Before
+    public void setUp() {
+        // not over the disk backend: the bulk writes here would only time the log and grow it for later runs
+        Assume.assumeTrue(Repositories.logDirectory() == null && Repositories.pets() instanceof PetData);
+        heap = Repositories.pets();
+        list = new ListPetRepository();
+        base = ThreadLocalRandom.current().nextLong(1L << 40, 1L << 50);
+    }
+
+    @Test
+    public void answersLikeTheListBackend() {
+        final Random random = new Random(base);
+        final String run = Long.toString(base, 36);
+        final List<String> statuses = new ArrayList<>();
+        final List<String> tags = new ArrayList<>();
+        for (final String status : STATUSES) {
+            statuses.add(status + "-" + run);
+        }
+        for (int i = 0; i < 6; i++) {
+            tags.add("t" + i);
+        }
+
+        for (int operation = 0; operation < 30000; operation++) {
+            final long id = base + random.nextInt(200);
+            final int kind = random.nextInt(10);
+            if (kind < 4) {
+                final Pet pet = pet(id, statuses.get(random.nextInt(statuses.size())),
+                        tags.get(random.nextInt(tags.size())), tags.get(random.nextInt(tags.size())));
+                heap.addPet(pet);
+                list.addPet(pet);
+            } else if (kind == 4) {
+                heap.deletePetById(id);
+                list.deletePetById(id);
+            } else if (kind == 5) {
+                // each backend at its own current version, so both succeed or both find the pet gone
+                final Pet pet = pet(id, statuses.get(random.nextInt(statuses.size())));
+                final Versioned<Pet> inHeap = heap.getVersionedPetById(id);
+                final Versioned<Pet> inList = list.getVersionedPetById(id);
+                assertEquals(inHeap == null, inList == null);
+                if (inHeap != null) {
+                    assertTrue(heap.replacePet(pet, inHeap.getVersion()) != null);
+                    assertTrue(list.replacePet(pet, inList.getVersion()) != null);
+                }
+            } else if (kind == 6) {
+                assertEquals(json(list.getPetById(id)), json(heap.getPetById(id)));
+            } else if (kind < 9) {
+                final String status = random.nextBoolean() ? statuses.get(random.nextInt(statuses.size()))
+                        : statuses.get(0) + "," + statuses.get(2);
+                final Long after = random.nextBoolean() ? null : id;
+                assertEquals(json(list.findPetByStatus(status, after, 7)),
+                        json(heap.findPetByStatus(status, after, 7)));
+            } else {
+                final List<String> wanted = Arrays.asList(tag("t" + random.nextInt(6)), tag("t" + random.nextInt(6)));
+                final boolean matchAll = random.nextBoolean();
+                assertEquals(json(own(list.findPetByTags(wanted, matchAll))),
+                        json(own(heap.findPetByTags(wanted, matchAll))));
+            }
+        }
+    }
+
+    /**
+     * The pets of this run; the sample pets the list backend starts with carry other tags.
+     */
+    private List<Pet> own(final List<Pet> pets) {
+        final List<Pet> own = new ArrayList<>();
+        for (final Pet pet : pets) {
+            if (pet.getId() >= base) {
+                own.add(pet);
+            }
+        }
+        return own;
+    }
+}
@@ -0,0 +1,473 @@
+package io.swagger.petstore.data;
+
+import io.swagger.petstore.PetFixtures;
+import io.swagger.petstore.model.Order;
+import io.swagger.petstore.model.Pet;
+import io.swagger.petstore.model.User;
+import io.swagger.v3.core.util.Json;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The behaviour every repository backend shares, checked against the backend {@link Repositories} selects. The
+ * stores keep process-wide state, so the build runs this class once per backend, each in a JVM of its own with
+ * {@value Repositories#BACKEND_PROPERTY} set to list, heap or disk. Ids, statuses, tags and names are drawn per
+ * run, so the checks neither depend on the sample data nor trip over what an earlier run left in the disk log.
+ */
+public class RepositoryConformanceTest {
+    private static final long BASE = ThreadLocalRandom.current().nextLong(1L << 40, 1L << 50);
+    private static final String RUN = Long.toString(BASE, 36);
+    private static final AtomicLong ids = new AtomicLong(BASE);
+
+    private final PetRepository pets = Repositories.pets();
+    private final OrderRepository orders = Repositories.orders();
+    private final UserRepository users = Repositories.users();
+
+    @Test
+    public void storesReadsAndDeletesPets() {
+        final Pet pet = pet(ids.incrementAndGet(), "available", "stored");
+        final Versioned<Pet> stored = pets.addPet(pet);
+
+        assertEquals(json(pet), json(pets.getPetById(pet.getId())));
+        assertEquals(stored.getVersion(), pets.getVersionedPetById(pet.getId()).getVersion());
+
+        pet.setName("renamed");
+        final Versioned<Pet> restored = pets.addPet(pet);
+        assertTrue(restored.getVersion() > stored.getVersion());
+        assertEquals("renamed", pets.getPetById(pet.getId()).getName());
+
+        pets.deletePetById(pet.getId());
+        assertNull(pets.getPetById(pet.getId()));
+        assertNull(pets.getVersionedPetById(pet.getId()));
+    }
+
+    @Test
+    public void replacesAndDeletesPetsOnlyAtTheExpectedVersion() {
+        final long id = ids.incrementAndGet();
+        final Versioned<Pet> stored = pets.addPet(pet(id, "available"));
+
+        final Versioned<Pet> replaced = pets.replacePet(pet(id, "sold"), stored.getVersion());
+        assertNotNull(replaced);
+        assertTrue(replaced.getVersion() > stored.getVersion());
+        assertNull(pets.replacePet(pet(id, "pending"), stored.getVersion()));
+        assertEquals("sold", pets.getPetById(id).getStatus());
+
+        assertFalse(pets.deletePetById(id, stored.getVersion()));
+        assertNotNull(pets.getPetById(id));
+        assertTrue(pets.deletePetById(id, replaced.getVersion()));
+        assertNull(pets.getPetById(id));
+        assertFalse(pets.deletePetById(id, replaced.getVersion()));
+        assertNull(pets.replacePet(pet(id, "sold"), replaced.getVersion()));
+    }
+
+    @Test
+    public void storesPetBatchesAtOneVersion() {
+        final String status = status("batch");
+        final long first = ids.incrementAndGet();
+        final long second = ids.incrementAndGet();
+        final Pet replaced = pet(first, status);
+        final Pet last = pet(first, status);
+        last.setName("last");
+
+        final long version = pets.addPets(Arrays.asList(replaced, pet(second, status), last));
+
+        assertEquals(version, pets.getVersionedPetById(first).getVersion());
+        assertEquals(version, pets.getVersionedPetById(second).getVersion());
+        assertEquals("last", pets.getPetById(first).getName());
+        assertEquals(Arrays.asList(first, second), idsOf(pets.findPetByStatus(status)));
+
+        final long missing = ids.incrementAndGet();
+        final List<Versioned<Pet>> stored = pets.replacePets(Arrays.asList(pet(second, status), pet(missing, status)));
+        assertTrue(stored.get(0).getVersion() > version);
+        assertNull(stored.get(1));
+        assertNull(pets.getPetById(missing));
+    }
+
+    @Test
+    public void pagesPetsByStatusInIdOrder() {
+        final String status = status("paged");
+        final String other = status("other");
+        final List<Long> expected = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            final long id = ids.incrementAndGet();
+            pets.addPet(pet(id, i % 5 == 0 ? other : status));
+            expected.add(id);
+        }
+
+        final List<Long> paged = new ArrayList<>();
+        Long after = null;
+        for (List<Pet> page = pets.findPetByStatus(status + "," + other, null, 10); !page.isEmpty();
+             page = pets.findPetByStatus(status + "," + other, after, 10)) {
+            assertTrue(page.size() <= 10);
+            paged.addAll(idsOf(page));
+            after = page.get(page.size() - 1).getId();
+        }
+        assertEquals(expected, paged);
+
+        final List<Long> rest = idsOf(pets.iteratePetsByStatus(status + "," + other, expected.get(9)));
+        assertEquals(expected.subList(10, expected.size()), rest);
+        assertEquals(5, pets.findPetByStatus(other).size());
+    }
+
+    @Test
+    public void movesPetsBetweenStatuses() {
+        final String before = status("before");
+        final String after = status("after");
+        final long id = ids.incrementAndGet();
+        pets.addPet(pet(id, before, "dropped"));
+        pets.addPet(pet(id, after, "added"));
+
+        assertTrue(pets.findPetByStatus(before).isEmpty());
+        assertEquals(Collections.singletonList(id), idsOf(pets.findPetByStatus(after)));
+        assertTrue(pets.findPetByTags(Collections.singletonList(tag("dropped"))).isEmpty());
+        assertEquals(Collections.singletonList(id),
+                idsOf(pets.findPetByTags(Collections.singletonList(tag("added")))));
+    }
+
+    @Test
+    public void matchesAnyOrAllTags() {
+        final long a = ids.incrementAndGet();
+        final long ab = ids.incrementAndGet();
+        final long b = ids.incrementAndGet();
+        final long c = ids.incrementAndGet();
+        pets.addPet(pet(a, "available", "a"));
+        pets.addPet(pet(ab, "available", "a", "b", "a"));
+        pets.addPet(pet(b, "available", "b"));
+        pets.addPet(pet(c, "available", "c"));
+        final List<String> tags = Arrays.asList(tag("a"), tag("b"));
+
+        assertEquals(Arrays.asList(a, ab, b), idsOf(pets.findPetByTags(tags, false)));
+        assertEquals(Collections.singletonList(ab), idsOf(pets.findPetByTags(tags, true)));
+        assertTrue(pets.findPetByTags(Arrays.asList(tag("a"), tag("none")), true).isEmpty());
+        assertEquals(Arrays.asList(a, ab), idsOf(pets.findPetByTags(Arrays.asList(tag("a"), tag("none")), false)));
+
+        assertEquals(Arrays.asList(a, ab), idsOf(pets.findPetByTags(tags, false, null, 2)));
+        assertEquals(Collections.singletonList(b), idsOf(pets.findPetByTags(tags, false, ab, 2)));
+        assertEquals(Arrays.asList(ab, b), idsOf(pets.iteratePetsByTags(tags, false, a)));
+        assertEquals(Collections.singletonList(ab), idsOf(pets.iteratePetsByTags(tags, true, null)));
+    }
+
+    @Test
+    public void iteratesPetsAsOfTheCall() {
+        final long id = ids.incrementAndGet();
+        pets.addPet(pet(id, "available"));
+        final Iterator<Pet> walk = pets.iteratePets();
+        final long added = ids.incrementAndGet();
+        pets.addPet(pet(added, "available"));
+        pets.deletePetById(id);
+
+        final List<Long> seen = idsOf(walk);
+        assertTrue(seen.contains(id));
+        assertFalse(seen.contains(added));
+    }
+
+    @Test
+    public void storesReadsAndDeletesOrders() {
+        final long id = ids.incrementAndGet();
+        final Versioned<Order> stored = orders.addOrder(order(id, 3, status("placed"), new Date()));
+
+        assertEquals(3, orders.getOrderById(id).getQuantity());
+        assertEquals(stored.getVersion(), orders.getVersionedOrderById(id).getVersion());
+        assertTrue(idsOfOrders(orders.iterateOrders()).contains(id));
+
+        assertFalse(orders.deleteOrderById(id, stored.getVersion() - 1));
+        assertTrue(orders.deleteOrderById(id, stored.getVersion()));
+        assertNull(orders.getOrderById(id));
+        assertFalse(orders.deleteOrderById(id, stored.getVersion()));
+
+        final long other = ids.incrementAndGet();
+        orders.addOrder(order(other, 1, status("placed"), null));
+        orders.deleteOrderById(other);
+        assertNull(orders.getVersionedOrderById(other));
+    }
+
+    @Test
+    public void refusesVersionsHandedOutBeforeThisRun() {
+        // every run before this one handed out versions below the clock at its startup
+        final long started = TimeUnit.MILLISECONDS.toMicros(ManagementFactory.getRuntimeMXBean().getStartTime());
+        final long id = ids.incrementAndGet();
+        final String name = name("earlier");
+        final Versioned<Pet> pet = pets.addPet(pet(id, "available"));
+        final Versioned<Order> order = orders.addOrder(order(id, 1, status("earlier"), null));
+        final Versioned<User> user = users.addUser(user(id, name));
+        assertTrue(pet.getVersion() > started);
+        assertTrue(order.getVersion() > started);
+        assertTrue(user.getVersion() > started);
+
+        // such as the versions the sample data got when every run counted from 0
+        for (final long earlier : new long[]{1, started}) {
+            assertNull(pets.replacePet(pet(id, "sold"), earlier));
+            assertFalse(pets.deletePetById(id, earlier));
+            assertFalse(orders.deleteOrderById(id, earlier));
+            assertNull(users.replaceUser(name, user(id, name), earlier));
+            assertFalse(users.deleteUser(name, earlier));
+        }
+        assertEquals(pet.getVersion(), pets.getVersionedPetById(id).getVersion());
+        assertEquals(order.getVersion(), orders.getVersionedOrderById(id).getVersion());
+        assertEquals(user.getVersion(), users.findVersionedUserByName(name).getVersion());
+    }
+
+    @Test
+    public void takesViewsOfAllStoresAtOnePointInTime() throws InterruptedException {
+        // the writer adds a pet before its order and deletes it after, so no point in time has the order alone
+        final String status = status("paired");
+        final AtomicBoolean done = new AtomicBoolean();
+        final Thread writer = new Thread(() -> {
+            while (!done.get()) {
+                final long id = ids.incrementAndGet();
+                pets.addPet(pet(id, "available"));
+                orders.addOrder(OrderData.createOrder(id, id, 1, null, status, false));
+                orders.deleteOrderById(id);
+                pets.deletePetById(id);
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 50; i++) {
+                final Map.Entry<Iterator<Pet>, Iterator<Order>> views = Repositories.atOnePointInTime(() -> {
+                    final Iterator<Pet> petView = pets.iteratePets();
+                    // time for the writer to land between the two views, if it can
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    return new AbstractMap.SimpleImmutableEntry<>(petView, orders.iterateOrders());
+                });
+                final List<Long> petIds = idsOf(views.getKey());
+                final Iterator<Order> orderView = views.getValue();
+                while (orderView.hasNext()) {
+                    final Order order = orderView.next();
+                    if (status.equals(order.getStatus())) {
+                        assertTrue("order " + order.getId() + " without its pet", petIds.contains(order.getPetId()));
+                    }
+                }
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+    }
+
+    @Test
+    public void countsInventoryByStatus() {
+        final String placed = status("placed");
+        final String delivered = status("delivered");
+        final long first = ids.incrementAndGet();
+        final long second = ids.incrementAndGet();
+        orders.addOrder(order(first, 3, placed, new Date()));
+        orders.addOrder(order(second, 4, placed, null));
+        assertEquals(Integer.valueOf(7), orders.getCountByStatus().get(placed));
+
+        orders.addOrder(order(first, 5, delivered, new Date()));
+        Map<String, Integer> inventory = orders.getCountByStatus();
+        assertEquals(Integer.valueOf(4), inventory.get(placed));
+        assertEquals(Integer.valueOf(5), inventory.get(delivered));
+
+        orders.deleteOrderById(second);
+        inventory = orders.getCountByStatus();
+        assertFalse(inventory.containsKey(placed));
+        assertEquals(Integer.valueOf(5), inventory.get(delivered));
+        orders.deleteOrderById(first);
+        assertFalse(orders.getCountByStatus().containsKey(delivered));
+    }
+
+    @Test
+    public void listsOrdersByShipDateRange() {
+        // a day of its own, far from the sample orders and from other runs
+        final long day = TimeUnit.DAYS.toMillis(365L * 1000 + BASE % 100000);
+        final long early = ids.incrementAndGet();
+        final long late = ids.incrementAndGet();
+        final long sameTime = ids.incrementAndGet();
+        final long outside = ids.incrementAndGet();
+        orders.addOrder(order(late, 1, "placed", new Date(day + 5000)));
+        orders.addOrder(order(early, 1, "placed", new Date(day + 1000)));
+        orders.addOrder(order(sameTime, 1, "placed", new Date(day + 1000)));
+        orders.addOrder(order(outside, 1, "placed", new Date(day + 9000)));
+
+        assertEquals(Arrays.asList(early, sameTime, late),
+                idsOfOrders(orders.iterateOrdersByShipDate(new Date(day), new Date(day + 9000))));
+        assertEquals(Collections.singletonList(late),
+                idsOfOrders(orders.iterateOrdersByShipDate(new Date(day + 1001), new Date(day + 5001))));
+        assertTrue(idsOfOrders(orders.iterateOrdersByShipDate(new Date(day + 9000), new Date(day))).isEmpty());
+    }
+
+    @Test
+    public void storesReadsAndDeletesUsers() {
+        final long id = ids.incrementAndGet();
+        final String name = name("crud");
+        final Versioned<User> stored = users.addUser(user(id, name));
+
+        assertEquals(name, users.findUserByName(name).getUsername());
+        assertEquals(name, users.findUserById(id).getUsername());
+        assertEquals(stored.getVersion(), users.findVersionedUserByName(name).getVersion());
+        assertNull(users.findUserByName(name("missing")));
+
+        assertFalse(users.deleteUser(name, stored.getVersion() - 1));
+        assertTrue(users.deleteUser(name, stored.getVersion()));
+        assertNull(users.findUserByName(name));
+        assertNull(users.findUserById(id));
+    }
+
+    @Test
+    public void replacesUsersOnlyAtTheExpectedVersion() {
+        final long id = ids.incrementAndGet();
+        final String name = name("replace");
+        final Versioned<User> stored = users.addUser(user(id, name));
+
+        final User changed = user(id, name);
+        changed.setEmail("changed@example.com");
+        final Versioned<User> replaced = users.replaceUser(name, changed, stored.getVersion());
+        assertNotNull(replaced);
+        assertTrue(replaced.getVersion() > stored.getVersion());
+        assertNull(users.replaceUser(name, user(id, name), stored.getVersion()));
+        assertEquals("changed@example.com", users.findUserByName(name).getEmail());
+    }
+
+    @Test
+    public void renamesUsersOnlyToFreeNames() {
+        final String name = name("old");
+        final String renamed = name("new");
+        final String taken = name("taken");
+        final Versioned<User> stored = users.addUser(user(ids.incrementAndGet(), name));
+        final long takenId = ids.incrementAndGet();
+        users.addUser(user(takenId, taken));
+
+        assertNull(users.replaceUser(name, user(stored.getValue().getId(), taken), stored.getVersion()));
+        assertEquals(takenId, users.findUserByName(taken).getId());
+        assertNotNull(users.findUserByName(name));
+
+        final Versioned<User> moved = users.replaceUser(name, user(stored.getValue().getId(), renamed),
+                stored.getVersion());
+        assertNotNull(moved);
+        assertNull(users.findUserByName(name));
+        assertEquals(moved.getVersion(), users.findVersionedUserByName(renamed).getVersion());
+    }
+
+    @Test
+    public void storesUserBatchesAtOneVersion() {
+        final String first = name("first");
+        final String second = name("second");
+        final User replaced = user(ids.incrementAndGet(), first);
+        final User last = user(ids.incrementAndGet(), first);
+
+        final long version = users.addUsers(Arrays.asList(replaced, user(ids.incrementAndGet(), second), last));
+
+        assertEquals(last.getId(), users.findUserByName(first).getId());
+        assertEquals(version, users.findVersionedUserByName(first).getVersion());
+        assertEquals(version, users.findVersionedUserByName(second).getVersion());
+    }
+
+    /**
+     * On the disk backend, a snapshot plus the log written after it replay to what the stores hold.
+     */
+    @Test
+    public void replaysSnapshotAndLogToTheStoredState() throws IOException {
+        Assume.assumeNotNull(Repositories.logDirectory());
+        final String status = status("replayed");
+        final long kept = ids.incrementAndGet();
+        final long deleted = ids.incrementAndGet();
+        pets.addPet(pet(kept, status, "snapshotted"));
+        pets.addPet(pet(deleted, status));
+        Snapshotter.snapshot(MutationLog.get());
+        pets.addPet(pet(kept, status, "logged"));
+        pets.deletePetById(deleted);
+        final String name = name("replayed");
+        users.addUser(user(ids.incrementAndGet(), name));
+
+        final MutationLog reopened = MutationLog.open(Paths.get(Repositories.logDirectory()));
+        final Map<Long, MutationLog.Record> replayedPets = new HashMap<>();
+        for (final MutationLog.Record record : reopened.replay(MutationLog.PET_PUT, MutationLog.PET_DELETE,
+                record -> record.getType() == MutationLog.PET_PUT
+                        ? record.getPayload(Pet.class).getId() : record.getPayload(Long.class)).getRecords()) {
+            if (record.getType() == MutationLog.PET_PUT) {
+                replayedPets.put(record.getPayload(Pet.class).getId(), record);
+            }
+        }
+        assertFalse(replayedPets.containsKey(deleted));
+        assertEquals(json(pets.getPetById(kept)), json(replayedPets.get(kept).getPayload(Pet.class)));
+        assertEquals(pets.getVersionedPetById(kept).getVersion(), replayedPets.get(kept).getVersion());
+
+        boolean userReplayed = false;
+        for (final MutationLog.Record record : reopened.replay(MutationLog.USER_PUT, MutationLog.USER_DELETE,
+                record -> record.getType() == MutationLog.USER_PUT
+                        ? record.getPayload(User.class).getUsername() : record.getPayload(String.class))
+                .getRecords()) {
+            userReplayed |= record.getType() == MutationLog.USER_PUT
+                    && name.equals(record.getPayload(User.class).getUsername());
+        }
+        assertTrue(userReplayed);
+    }
+
+    private static String status(final String name) {
+        return name + "-" + RUN;
+    }
+
+    static String tag(final String name) {
+        return "tag-" + name + "-" + RUN;
+    }
+
+    private static String name(final String name) {
+        return "user-" + name + "-" + RUN;
+    }
+
+    static Pet pet(final long id, final String status, final String... tags) {
+        final String[] ofThisRun = new String[tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            ofThisRun[i] = tag(tags[i]);
+        }
+        return PetFixtures.pet(id, status, ofThisRun);
+    }
+
+    private static Order order(final long id, final int quantity, final String status, final Date shipDate) {
+        return OrderData.createOrder(id, 1, quantity, shipDate, status, false);
+    }
+
+    private static User user(final long id, final String username) {
+        return UserData.createUser(id, username, "first", "last", "user@example.com", "123", 1);
+    }
+
+    private static List<Long> idsOf(final List<Pet> pets) {
+        return idsOf(pets.iterator());
+    }
+
+    private static List<Long> idsOf(final Iterator<Pet> pets) {
+        final List<Long> ids = new ArrayList<>();
+        pets.forEachRemaining(pet -> ids.add(pet.getId()));
+        return ids;
+    }
+
+    private static List<Long> idsOfOrders(final Iterator<Order> orders) {
+        final List<Long> ids = new ArrayList<>();
+        orders.forEachRemaining(order -> ids.add(order.getId()));
+        return ids;
+    }
+
+    static String json(final Object value) {
+        try {
+            return Json.mapper().writeValueAsString(value);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
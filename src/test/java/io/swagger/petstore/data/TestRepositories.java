@@ -0,0 +1,16 @@
+package io.swagger.petstore.data;
+
+/**
+ * The repository backends for tests outside this package.
+ */
+public final class TestRepositories {
+    private TestRepositories() {
+    }
+
+    /**
+     * A new list backend, holding the sample pets.
+     */
+    public static PetRepository listPets() {
+        return new ListPetRepository();
+    }
+}
@@ -0,0 +1,65 @@
+package io.swagger.petstore.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.swagger.petstore.model.Pet;
+import io.swagger.v3.core.util.Json;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+
+import static io.swagger.petstore.utils.BinaryFormatsTest.values;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * What encoding and decoding each binary format costs against JSON. Times depend on the machine, so this only
+ * runs in the benchmarks profile: {@code mvn test -Pbenchmarks}. The limit is loose, so only a format that lost
+ * its streaming codec fails it; a failure reports the times measured.
+ */
+public class BinaryFormatsBenchmark {
+    private static final ObjectMapper JSON = Json.mapper();
+
+    @Test
+    public void codesWithinAFewTimesJson() throws IOException {
+        // the first round only warms up the mappers
+        timed(JSON);
+        for (final MediaType type : BinaryFormats.TYPES) {
+            timed(BinaryFormats.mapper(type));
+        }
+        final long[] json = timed(JSON);
+        for (final MediaType type : BinaryFormats.TYPES) {
+            final long[] binary = timed(BinaryFormats.mapper(type));
+            for (int i = 0; i < json.length; i++) {
+                final Object value = values().get(i);
+                assertTrue(type + " " + value.getClass().getSimpleName() + ": " + binary[i] + " ns, json "
+                        + json[i] + " ns", binary[i] < json[i] * 4);
+            }
+        }
+    }
+
+    /**
+     * The nanoseconds one encode and one decode of each value take with the mapper.
+     */
+    private static long[] timed(final ObjectMapper mapper) throws IOException {
+        final long[] nanos = new long[values().size()];
+        for (int v = 0; v < nanos.length; v++) {
+            final Object value = values().get(v);
+            final int operations = value instanceof Pet[] ? 2000 : 100000;
+            final ObjectWriter writer = mapper.writer();
+            final ObjectReader reader = mapper.readerFor(value.getClass());
+            final byte[] body = writer.writeValueAsBytes(value);
+
+            final long start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                writer.writeValueAsBytes(value);
+            }
+            for (int i = 0; i < operations; i++) {
+                reader.readValue(body);
+            }
+            nanos[v] = (System.nanoTime() - start) / operations;
+        }
+        return nanos;
+    }
+}
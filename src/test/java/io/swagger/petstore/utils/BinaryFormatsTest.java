@@ -0,0 +1,76 @@
+package io.swagger.petstore.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.petstore.model.Order;
+import io.swagger.petstore.model.Pet;
+import io.swagger.petstore.model.User;
+import io.swagger.v3.core.util.Json;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static io.swagger.petstore.PetFixtures.pet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The binary formats against JSON: every model reads back with the fields it was written with, and CBOR and Smile
+ * bodies are smaller. What encoding and decoding cost against JSON is measured by {@link BinaryFormatsBenchmark}.
+ */
+public class BinaryFormatsTest {
+    private static final ObjectMapper JSON = Json.mapper();
+
+    @Test
+    public void readsBackWhatWasWritten() throws IOException {
+        for (final Object value : values()) {
+            final String expected = JSON.writeValueAsString(value);
+            for (final MediaType type : BinaryFormats.TYPES) {
+                final ObjectMapper mapper = BinaryFormats.mapper(type);
+                final Object read = mapper.readValue(mapper.writeValueAsBytes(value), value.getClass());
+                assertEquals(type.toString(), expected, JSON.writeValueAsString(read));
+            }
+        }
+    }
+
+    @Test
+    public void writesSmallerBodiesThanJson() throws IOException {
+        for (final Object value : values()) {
+            final int json = JSON.writeValueAsBytes(value).length;
+            for (final MediaType type : Arrays.asList(BinaryFormats.APPLICATION_CBOR_TYPE,
+                    BinaryFormats.APPLICATION_SMILE_TYPE)) {
+                final int binary = BinaryFormats.mapper(type).writeValueAsBytes(value).length;
+                assertTrue(type + " " + binary + " B, json " + json + " B", binary < json);
+            }
+        }
+    }
+
+    static List<Object> values() {
+        final Order order = new Order();
+        order.setId(1);
+        order.setPetId(1);
+        order.setQuantity(100);
+        order.setShipDate(new Date(1500000000000L));
+        order.setStatus("placed");
+        order.setComplete(true);
+
+        final User user = new User();
+        user.setId(1);
+        user.setUsername("user1");
+        user.setFirstName("first name 1");
+        user.setLastName("last name 1");
+        user.setEmail("email1@test.com");
+        user.setPassword("XXXXXXXXXXX");
+        user.setPhone("123-456-7890");
+        user.setUserStatus(1);
+
+        final Pet[] pets = new Pet[100];
+        for (int i = 0; i < pets.length; i++) {
+            pets[i] = pet(i);
+        }
+        return Arrays.asList(pet(1), order, user, pets);
+    }
+}
@@ -0,0 +1,192 @@
+package io.swagger.petstore.utils;
+
+import io.swagger.petstore.data.PetRepository;
+import io.swagger.petstore.data.TestRepositories;
+import io.swagger.petstore.model.ImportError;
+import io.swagger.petstore.model.ImportReport;
+import io.swagger.v3.core.util.Json;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+import static io.swagger.petstore.PetFixtures.pet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Newline-delimited imports into the list backend: what is imported, in which batches, and which lines are
+ * reported, for plain and gzipped input, lines split across reads, and lines longer than the read buffer.
+ */
+public class PetImporterTest {
+    // clear of the sample pets the list backend starts with
+    private static final long BASE = 1000;
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+
+    private PetRepository pets;
+
+    @Before
+    public void setUp() {
+        pets = TestRepositories.listPets();
+    }
+
+    @Test
+    public void storesOneBatchPerBatchSizeOfPets() throws IOException {
+        final StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            input.append(line(BASE + i)).append('\n');
+        }
+        final ImportReport report = new PetImporter(pets, 10).importFrom(plain(input.toString()));
+        assertEquals(25, report.getImported());
+        assertEquals(0, report.getFailed());
+
+        // the pets of one repository update share its version
+        final Map<Long, Integer> batches = new TreeMap<>();
+        for (int i = 0; i < 25; i++) {
+            batches.merge(pets.getVersionedPetById(BASE + i).getVersion(), 1, Integer::sum);
+        }
+        assertEquals(Arrays.asList(10, 10, 5), new ArrayList<>(batches.values()));
+    }
+
+    @Test
+    public void reportsInvalidLinesWithTheirNumbers() throws IOException {
+        final String input = line(BASE) + "\n"
+                + "\n"
+                + "not json\n"
+                + "{\"name\":\"no id\"}\n"
+                + "{\"id\":" + (BASE + 4) + "}\n"
+                + line(BASE + 5) + " " + line(BASE + 6) + "\n"
+                + "null\n"
+                + "   \n"
+                + line(BASE + 8) + "\n";
+        final ImportReport report = new PetImporter(pets, 10).importFrom(plain(input));
+        assertEquals(2, report.getImported());
+        assertEquals(5, report.getFailed());
+        assertEquals(Arrays.asList(3L, 4L, 5L, 6L, 7L), lines(report));
+        assertEquals("Pet has no id", report.getErrors().get(1).getMessage());
+        assertEquals("Pet has no name", report.getErrors().get(2).getMessage());
+        assertEquals("Expected one pet per line", report.getErrors().get(3).getMessage());
+        assertEquals("Expected a pet object", report.getErrors().get(4).getMessage());
+        assertNotNull(pets.getPetById(BASE + 8));
+        assertNull(pets.getPetById(BASE + 5));
+    }
+
+    @Test
+    public void readsCrlfLinesAndALastLineWithoutANewline() throws IOException {
+        final String input = line(BASE) + "\r\n" + "{\r\n" + line(BASE + 2) + "\r\n" + line(BASE + 3);
+        // a few bytes per read, so lines and their CRLF are split across reads
+        final ImportReport report = new PetImporter(pets, 10).importFrom(trickled(bytes(input), 7));
+        assertEquals(3, report.getImported());
+        assertEquals(Collections.singletonList(2L), lines(report));
+        assertEquals(pet(BASE + 3).getName(), pets.getPetById(BASE + 3).getName());
+    }
+
+    @Test
+    public void growsTheBufferForLinesUpToTheLimit() throws IOException {
+        final String longest = named(BASE + 1, MAX_LINE_LENGTH - 1);
+        assertEquals(MAX_LINE_LENGTH - 1, bytes(longest).length);
+        final String input = line(BASE) + "\n" + named(BASE + 2, 200 * 1024) + "\n" + longest + "\n"
+                + line(BASE + 3) + "\n";
+        final ImportReport report = new PetImporter(pets, 10).importFrom(trickled(bytes(input), 10000));
+        assertEquals(4, report.getImported());
+        assertEquals(0, report.getFailed());
+        final String name = pets.getPetById(BASE + 1).getName();
+        assertEquals(longest, "{\"id\":" + (BASE + 1) + ",\"name\":\"" + name + "\"}");
+    }
+
+    @Test
+    public void skipsOverLongLinesAndKeepsCountingLines() throws IOException {
+        final String input = line(BASE) + "\n"
+                + named(BASE + 1, MAX_LINE_LENGTH + 1) + "\n"
+                + line(BASE + 2) + "\n"
+                + named(BASE + 3, 3 * MAX_LINE_LENGTH) + "\n"
+                + "not json\n"
+                + line(BASE + 5) + "\n"
+                + named(BASE + 6, 2 * MAX_LINE_LENGTH);
+        final ImportReport report = new PetImporter(pets, 10).importFrom(plain(input));
+        assertEquals(3, report.getImported());
+        assertEquals(Arrays.asList(2L, 4L, 5L, 7L), lines(report));
+        final String tooLong = "Line is longer than " + MAX_LINE_LENGTH + " bytes";
+        assertEquals(tooLong, report.getErrors().get(0).getMessage());
+        assertEquals(tooLong, report.getErrors().get(1).getMessage());
+        assertEquals(tooLong, report.getErrors().get(3).getMessage());
+        assertNull(pets.getPetById(BASE + 1));
+        assertNotNull(pets.getPetById(BASE + 5));
+    }
+
+    @Test
+    public void readsGzippedInput() throws IOException {
+        final StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 2500; i++) {
+            input.append(i == 1234 ? "{" : line(BASE + i)).append('\n');
+        }
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(bytes(input.toString()));
+        }
+        final ImportReport report = new PetImporter(pets, 1000).importFrom(
+                trickled(compressed.toByteArray(), 1));
+        assertEquals(2499, report.getImported());
+        assertEquals(Collections.singletonList(1235L), lines(report));
+        // the line that failed does not count towards the second batch
+        final long first = pets.getVersionedPetById(BASE).getVersion();
+        assertEquals(first, pets.getVersionedPetById(BASE + 999).getVersion());
+        assertEquals(first + 1, pets.getVersionedPetById(BASE + 2000).getVersion());
+        assertEquals(first + 2, pets.getVersionedPetById(BASE + 2001).getVersion());
+    }
+
+    private static String line(final long id) throws IOException {
+        return Json.mapper().writeValueAsString(pet(id));
+    }
+
+    /**
+     * A pet line of exactly the given number of bytes, padded out with its name.
+     */
+    private static String named(final long id, final int length) {
+        final String prefix = "{\"id\":" + id + ",\"name\":\"";
+        final char[] name = new char[length - prefix.length() - 2];
+        Arrays.fill(name, 'a');
+        return prefix + new String(name) + "\"}";
+    }
+
+    private static List<Long> lines(final ImportReport report) {
+        final List<Long> lines = new ArrayList<>();
+        for (final ImportError error : report.getErrors()) {
+            lines.add(error.getLine());
+        }
+        return lines;
+    }
+
+    private static byte[] bytes(final String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static InputStream plain(final String text) {
+        return new ByteArrayInputStream(bytes(text));
+    }
+
+    /**
+     * Hands out at most the given number of bytes per read.
+     */
+    private static InputStream trickled(final byte[] body, final int perRead) {
+        return new FilterInputStream(new ByteArrayInputStream(body)) {
+            @Override
+            public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, perRead));
+            }
+        };
+    }
+}